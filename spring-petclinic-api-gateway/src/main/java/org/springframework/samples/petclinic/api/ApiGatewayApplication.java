@@ -15,11 +15,14 @@
  */
 package org.springframework.samples.petclinic.api;
 
+import io.github.resilience4j.bulkhead.BulkheadFullException;
 import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import io.github.resilience4j.timelimiter.TimeLimiterConfig;
-import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
 import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
 import org.springframework.cloud.circuitbreaker.resilience4j.Resilience4JConfigBuilder;
 import org.springframework.cloud.client.circuitbreaker.Customizer;
@@ -27,22 +30,22 @@ import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.core.io.Resource;
-import org.springframework.http.MediaType;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.samples.petclinic.api.system.StaticAssets;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.server.RequestPredicates;
 import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.RouterFunctions;
-import org.springframework.web.reactive.function.server.ServerResponse;
 
-import java.time.Duration;
+import java.io.IOException;
 
 /**
  * @author Maciej Szarlinski
  */
 @EnableDiscoveryClient
 @SpringBootApplication
+@EnableConfigurationProperties(ApiGatewayProperties.class)
 public class ApiGatewayApplication {
 
 	public static void main(String[] args) {
@@ -57,33 +60,49 @@ public class ApiGatewayApplication {
 
 	@Bean
 	@LoadBalanced
-	public WebClient.Builder loadBalancedWebClientBuilder() {
-		return WebClient.builder();
+	public WebClient.Builder loadBalancedWebClientBuilder(ObjectProvider<WebClientCustomizer> customizers) {
+		WebClient.Builder builder = WebClient.builder();
+		customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+		return builder;
 	}
 
-	@Value("classpath:/static/index.html")
-	private Resource indexHtml;
+	@Bean
+	StaticAssets staticAssets() throws IOException {
+		return new StaticAssets();
+	}
 
 	/**
 	 * workaround solution for forwarding to index.html
 	 * @see <a href="https://github.com/spring-projects/spring-boot/issues/9785">#9785</a>
 	 */
 	@Bean
-	RouterFunction<?> routerFunction() {
-		RouterFunction router = RouterFunctions.resources("/**", new ClassPathResource("static/")).andRoute(
-				RequestPredicates.GET("/"),
-				request -> ServerResponse.ok().contentType(MediaType.TEXT_HTML).bodyValue(indexHtml));
+	RouterFunction<?> routerFunction(StaticAssets staticAssets) {
+		RouterFunction router = RouterFunctions.route(RequestPredicates.GET("/assets/{name}"), staticAssets::bundle)
+				.andRoute(RequestPredicates.GET("/"), staticAssets::index)
+				.and(RouterFunctions.resources("/**", new ClassPathResource("static/")));
 		return router;
 	}
 
 	/**
-	 * Default Resilience4j circuit breaker configuration
+	 * Resilience4j circuit breaker configuration of each downstream service, see
+	 * {@code api-gateway.resilience}
 	 */
 	@Bean
-	public Customizer<ReactiveResilience4JCircuitBreakerFactory> defaultCustomizer() {
-		return factory -> factory.configureDefault(id -> new Resilience4JConfigBuilder(id)
-				.circuitBreakerConfig(CircuitBreakerConfig.ofDefaults())
-				.timeLimiterConfig(TimeLimiterConfig.custom().timeoutDuration(Duration.ofSeconds(4)).build()).build());
+	public Customizer<ReactiveResilience4JCircuitBreakerFactory> defaultCustomizer(ApiGatewayProperties properties) {
+		return factory -> factory.configureDefault(id -> {
+			ApiGatewayProperties.Downstream downstream = properties.getResilience().forService(id);
+			return new Resilience4JConfigBuilder(id).circuitBreakerConfig(CircuitBreakerConfig.custom()
+					.failureRateThreshold(downstream.getFailureRateThreshold())
+					.slowCallRateThreshold(downstream.getSlowCallRateThreshold())
+					.slowCallDurationThreshold(downstream.getSlowCallDurationThreshold())
+					.slidingWindowSize(downstream.getSlidingWindowSize())
+					.minimumNumberOfCalls(downstream.getMinimumNumberOfCalls())
+					.waitDurationInOpenState(downstream.getWaitDurationInOpenState())
+					// a full bulkhead says nothing about the health of the service
+					.ignoreExceptions(BulkheadFullException.class).build())
+					.timeLimiterConfig(TimeLimiterConfig.custom().timeoutDuration(downstream.getTimeout()).build())
+					.build();
+		});
 	}
 
 }
@@ -15,8 +15,9 @@
  */
 package org.springframework.samples.petclinic.api.application;
 
-import lombok.RequiredArgsConstructor;
 import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.OwnersPage;
+import org.springframework.samples.petclinic.api.system.ServiceWebClients;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -26,14 +27,23 @@ import reactor.core.publisher.Mono;
  * @author Maciej Szarlinski
  */
 @Component
-@RequiredArgsConstructor
 public class CustomersServiceClient {
 
-	private final WebClient.Builder webClientBuilder;
+	private final WebClient webClient;
+
+	public CustomersServiceClient(ServiceWebClients webClients) {
+		this.webClient = webClients.get("customers-service");
+	}
 
 	public Mono<OwnerDetails> getOwner(final int ownerId) {
-		return webClientBuilder.build().get().uri("http://customers-service/owners/{ownerId}", ownerId).retrieve()
+		return webClient.get().uri("http://customers-service/owners/{ownerId}", ownerId).retrieve()
 				.bodyToMono(OwnerDetails.class);
 	}
 
+	public Mono<OwnersPage> getOwners(final int after, final int size) {
+		return webClient.get()
+				.uri("http://customers-service/owners?after={after}&size={size}", after, size).retrieve()
+				.bodyToMono(OwnersPage.class);
+	}
+
 }
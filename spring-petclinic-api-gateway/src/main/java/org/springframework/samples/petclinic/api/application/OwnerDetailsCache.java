@@ -0,0 +1,151 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.Value;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.PetDetails;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.io.UncheckedIOException;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of assembled {@link OwnerDetails} aggregates, weighed by their JSON size.
+ * Each entry carries a strong ETag computed from its JSON representation. Entries are
+ * dropped when a write for the owner, or for one of its pets, goes through the gateway.
+ * The last complete aggregate of each owner is also kept aside, for up to
+ * {@code max-stale}, as a fallback for when a downstream service fails.
+ */
+@Component
+public class OwnerDetailsCache {
+
+	private final ObjectMapper objectMapper;
+
+	private final Cache<Integer, Entry> cache;
+
+	private final Cache<Integer, Entry> lastKnown;
+
+	private final ConcurrentMap<Integer, Integer> ownerIdByPetId = new ConcurrentHashMap<>();
+
+	private final AtomicLong invalidations = new AtomicLong();
+
+	public OwnerDetailsCache(ApiGatewayProperties properties, ObjectMapper objectMapper, MeterRegistry registry) {
+		this.objectMapper = objectMapper;
+		this.cache = Caffeine.newBuilder().maximumWeight(properties.getOwnerDetailsCache().getMaxWeight())
+				.weigher((Integer ownerId, Entry entry) -> entry.getWeight())
+				.expireAfterWrite(properties.getOwnerDetailsCache().getTimeToLive()).removalListener(this::onRemoval)
+				.recordStats().build();
+		this.lastKnown = Caffeine.newBuilder().maximumWeight(properties.getOwnerDetailsCache().getMaxWeight())
+				.weigher((Integer ownerId, Entry entry) -> entry.getWeight())
+				.expireAfterWrite(properties.getOwnerDetailsCache().getMaxStale()).build();
+		CaffeineCacheMetrics.monitor(registry, cache, "ownerDetails");
+	}
+
+	public Optional<Entry> get(int ownerId) {
+		return Optional.ofNullable(cache.getIfPresent(ownerId));
+	}
+
+	/**
+	 * Last complete aggregate of the owner, possibly outdated.
+	 */
+	public Optional<OwnerDetails> getLastKnown(int ownerId) {
+		return Optional.ofNullable(lastKnown.getIfPresent(ownerId)).map(Entry::getOwnerDetails);
+	}
+
+	/**
+	 * Version to capture before assembling an aggregate and to hand over to
+	 * {@link #put(int, OwnerDetails, long)}, so that an aggregate read concurrently with
+	 * a write is not cached.
+	 */
+	public long version() {
+		return invalidations.get();
+	}
+
+	public Entry put(int ownerId, OwnerDetails owner, long version) {
+		Entry entry = toEntry(owner);
+		lastKnown.put(ownerId, entry);
+		if (invalidations.get() == version) {
+			owner.getPets().forEach(pet -> ownerIdByPetId.put(pet.getId(), ownerId));
+			cache.put(ownerId, entry);
+			if (invalidations.get() != version) {
+				cache.invalidate(ownerId);
+			}
+		}
+		return entry;
+	}
+
+	public void invalidateOwner(int ownerId) {
+		invalidations.incrementAndGet();
+		cache.invalidate(ownerId);
+	}
+
+	public void invalidatePet(int petId) {
+		invalidations.incrementAndGet();
+		Integer ownerId = ownerIdByPetId.remove(petId);
+		if (ownerId != null) {
+			cache.invalidate(ownerId);
+		}
+	}
+
+	public void invalidateAll() {
+		invalidations.incrementAndGet();
+		cache.invalidateAll();
+		lastKnown.invalidateAll();
+	}
+
+	private Entry toEntry(OwnerDetails owner) {
+		try {
+			byte[] json = objectMapper.writeValueAsBytes(owner);
+			return new Entry(owner, "\"" + DigestUtils.md5DigestAsHex(json) + "\"", json.length);
+		}
+		catch (JsonProcessingException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+	private void onRemoval(Integer ownerId, Entry entry, RemovalCause cause) {
+		if (cause.wasEvicted() && entry != null && cache.getIfPresent(ownerId) == null) {
+			for (PetDetails pet : entry.getOwnerDetails().getPets()) {
+				ownerIdByPetId.remove(pet.getId(), ownerId);
+			}
+		}
+	}
+
+	@Value
+	public static class Entry {
+
+		OwnerDetails ownerDetails;
+
+		String eTag;
+
+		int weight;
+
+	}
+
+}
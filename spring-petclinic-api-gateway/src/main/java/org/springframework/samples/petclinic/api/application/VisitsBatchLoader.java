@@ -0,0 +1,180 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.samples.petclinic.api.system.DownstreamResilience;
+import org.springframework.samples.petclinic.api.system.RequestDeadline;
+import org.springframework.samples.petclinic.api.system.WarmupWebFilter;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * DataLoader-style batching of visits lookups: lookups issued by concurrent requests
+ * within a short window are sent to visits-service as a single multi-get, and the
+ * returned visits are split back per caller. The multi-get is guarded by the
+ * {@link DownstreamResilience} of visits-service, so that its adaptive timeout measures
+ * the call rather than the window, and runs in the Reactor context of one of the callers
+ * (trace included) with the earliest deadline of the batch.
+ */
+@Component
+public class VisitsBatchLoader {
+
+	private final VisitsServiceClient visitsServiceClient;
+
+	private final DownstreamResilience resilience;
+
+	private final ApiGatewayProperties.VisitsBatching properties;
+
+	private final DistributionSummary batchSize;
+
+	private final Object lock = new Object();
+
+	private List<PendingLookup> pending = new ArrayList<>();
+
+	private int pendingPetIds;
+
+	private Disposable scheduledFlush;
+
+	public VisitsBatchLoader(VisitsServiceClient visitsServiceClient, DownstreamResilience resilience,
+			ApiGatewayProperties properties, MeterRegistry registry) {
+		this.visitsServiceClient = visitsServiceClient;
+		this.resilience = resilience;
+		this.properties = properties.getVisitsBatching();
+		this.batchSize = DistributionSummary.builder("petclinic.gateway.visits.batch.size")
+				.description("Number of visits lookups merged into one visits-service call").register(registry);
+	}
+
+	public Mono<Visits> getVisitsForPets(final List<Integer> petIds) {
+		if (petIds.isEmpty()) {
+			return Mono.just(new Visits());
+		}
+		if (!properties.isEnabled()) {
+			return resilience.run("visits-service", visitsServiceClient.getVisitsForPets(petIds));
+		}
+		return Mono.deferContextual(context -> {
+			PendingLookup lookup = new PendingLookup(petIds, context);
+			List<PendingLookup> batch = null;
+			synchronized (lock) {
+				pending.add(lookup);
+				pendingPetIds += petIds.size();
+				if (pendingPetIds >= properties.getMaxBatchSize()) {
+					batch = drain();
+				}
+				else if (pending.size() == 1) {
+					scheduledFlush = Schedulers.parallel().schedule(this::flush,
+							properties.getWindow().toNanos(), TimeUnit.NANOSECONDS);
+				}
+			}
+			if (batch != null) {
+				dispatch(batch);
+			}
+			return lookup.result.asMono();
+		});
+	}
+
+	private void flush() {
+		List<PendingLookup> batch;
+		synchronized (lock) {
+			batch = drain();
+		}
+		if (!batch.isEmpty()) {
+			dispatch(batch);
+		}
+	}
+
+	private List<PendingLookup> drain() {
+		List<PendingLookup> batch = pending;
+		pending = new ArrayList<>();
+		pendingPetIds = 0;
+		if (scheduledFlush != null) {
+			scheduledFlush.dispose();
+			scheduledFlush = null;
+		}
+		return batch;
+	}
+
+	private void dispatch(List<PendingLookup> batch) {
+		batchSize.record(batch.size());
+		List<Integer> petIds = batch.stream().flatMap(lookup -> lookup.petIds.stream()).distinct()
+				.collect(toList());
+		resilience.run("visits-service", visitsServiceClient.getVisitsForPets(petIds)).contextWrite(context(batch))
+				.subscribe(visits -> {
+					Map<Integer, List<VisitDetails>> byPetId = visits.getItems().stream()
+							.collect(groupingBy(VisitDetails::getPetId));
+					batch.forEach(lookup -> lookup.complete(byPetId));
+				}, error -> batch.forEach(lookup -> lookup.result.tryEmitError(error)),
+						() -> batch.forEach(lookup -> lookup.result.tryEmitValue(new Visits())));
+	}
+
+	/**
+	 * Context of the first caller that is not warming up, with the earliest deadline.
+	 */
+	private static Context context(List<PendingLookup> batch) {
+		PendingLookup first = batch.stream().filter(lookup -> !WarmupWebFilter.isWarmup(lookup.context)).findFirst()
+				.orElse(batch.get(0));
+		RequestDeadline deadline = null;
+		for (PendingLookup lookup : batch) {
+			RequestDeadline candidate = lookup.context.getOrDefault(RequestDeadline.class, null);
+			if (candidate != null) {
+				deadline = candidate.min(deadline);
+			}
+		}
+		Context context = Context.of(first.context);
+		return deadline == null ? context : context.put(RequestDeadline.class, deadline);
+	}
+
+	private static final class PendingLookup {
+
+		private final List<Integer> petIds;
+
+		private final ContextView context;
+
+		private final Sinks.One<Visits> result = Sinks.one();
+
+		private PendingLookup(List<Integer> petIds, ContextView context) {
+			this.petIds = petIds;
+			this.context = context;
+		}
+
+		private void complete(Map<Integer, List<VisitDetails>> visitsByPetId) {
+			Visits visits = new Visits();
+			petIds.stream().map(visitsByPetId::get).filter(Objects::nonNull)
+					.forEach(visits.getItems()::addAll);
+			result.tryEmitValue(visits);
+		}
+
+	}
+
+}
@@ -15,13 +15,19 @@
  */
 package org.springframework.samples.petclinic.api.application;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.VisitSummaries;
 import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.ServiceWebClients;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.util.stream.Collectors.joining;
 
@@ -29,19 +35,44 @@ import static java.util.stream.Collectors.joining;
  * @author Maciej Szarlinski
  */
 @Component
-@RequiredArgsConstructor
 public class VisitsServiceClient {
 
 	// Could be changed for testing purpose
 	private String hostname = "http://visits-service/";
 
-	private final WebClient.Builder webClientBuilder;
+	private final WebClient webClient;
+
+	public VisitsServiceClient(ServiceWebClients webClients) {
+		this.webClient = webClients.get("visits-service");
+	}
 
 	public Mono<Visits> getVisitsForPets(final List<Integer> petIds) {
-		return webClientBuilder.build().get().uri(hostname + "pets/visits?petId={petId}", joinIds(petIds)).retrieve()
+		return webClient.get().uri(hostname + "pets/visits?petId={petId}", joinIds(petIds)).retrieve()
 				.bodyToMono(Visits.class);
 	}
 
+	public Mono<VisitSummaries> getVisitSummariesForPets(final List<Integer> petIds) {
+		return webClient.get()
+				.uri(hostname + "pets/visits/summary?petId={petId}", joinIds(petIds)).retrieve()
+				.bodyToMono(VisitSummaries.class);
+	}
+
+	/**
+	 * Dated visits of a pet, newest first, before the given date and visit id if any.
+	 */
+	public Flux<VisitDetails> getVisitTimelineForPet(final int ownerId, final int petId, final LocalDate before,
+			final int beforeId, final int limit) {
+		Map<String, Object> variables = new HashMap<>();
+		variables.put("ownerId", ownerId);
+		variables.put("petId", petId);
+		variables.put("limit", limit);
+		variables.put("before", before);
+		variables.put("beforeId", beforeId);
+		String cursor = before != null ? "&before={before}&beforeId={beforeId}" : "";
+		return webClient.get().uri(hostname + "owners/{ownerId}/pets/{petId}/visits?limit={limit}" + cursor, variables)
+				.retrieve().bodyToFlux(VisitDetails.class);
+	}
+
 	private String joinIds(List<Integer> petIds) {
 		return petIds.stream().map(Object::toString).collect(joining(","));
 	}
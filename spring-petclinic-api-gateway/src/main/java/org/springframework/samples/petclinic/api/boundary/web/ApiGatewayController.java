@@ -15,19 +15,43 @@
  */
 package org.springframework.samples.petclinic.api.boundary.web;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
-import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
-import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.ResponseEntity;
 import org.springframework.samples.petclinic.api.application.CustomersServiceClient;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import org.springframework.samples.petclinic.api.application.VisitsBatchLoader;
 import org.springframework.samples.petclinic.api.application.VisitsServiceClient;
 import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.OwnerSummary;
+import org.springframework.samples.petclinic.api.dto.OwnersPage;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.VisitSummaries;
+import org.springframework.samples.petclinic.api.dto.VisitSummary;
 import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.DownstreamResilience;
+import org.springframework.samples.petclinic.api.system.WarmupWebFilter;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
 
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -39,32 +63,188 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/gateway")
 public class ApiGatewayController {
 
+	static final int MAX_TIMELINE_SIZE = 100;
+
+	/**
+	 * Newest first, as yyyy-MM-dd dates sort like strings, ties broken by id.
+	 */
+	private static final Comparator<VisitDetails> TIMELINE_ORDER = Comparator
+			.comparing(VisitDetails::getDate, Comparator.nullsLast(Comparator.<String>reverseOrder()))
+			.thenComparing(VisitDetails::getId, Comparator.nullsLast(Comparator.<Integer>reverseOrder()));
+
 	private final CustomersServiceClient customersServiceClient;
 
 	private final VisitsServiceClient visitsServiceClient;
 
-	private final ReactiveCircuitBreakerFactory cbFactory;
+	private final VisitsBatchLoader visitsBatchLoader;
+
+	private final OwnerDetailsCache ownerDetailsCache;
+
+	private final DownstreamResilience resilience;
 
+	private final ObjectMapper objectMapper;
+
+	/**
+	 * Owner with the visits of all its pets. Complete aggregates are cached and carry a
+	 * strong ETag, so that a matching If-None-Match gets a 304 Not Modified. When a
+	 * downstream service fails, the last known aggregate of the owner is used instead.
+	 */
 	@GetMapping(value = "owners/{ownerId}")
-	public Mono<OwnerDetails> getOwnerDetails(final @PathVariable int ownerId) {
-		return customersServiceClient.getOwner(ownerId)
-				.flatMap(owner -> visitsServiceClient.getVisitsForPets(owner.getPetIds()).transform(it -> {
-					ReactiveCircuitBreaker cb = cbFactory.create("getOwnerDetails");
-					return cb.run(it, throwable -> emptyVisitsForPets());
-				}).map(addVisitsToOwner(owner)));
+	public Mono<ResponseEntity<OwnerDetails>> getOwnerDetails(final @PathVariable int ownerId) {
+		return Mono.deferContextual(context -> getOwnerDetails(ownerId, cached(ownerId, context)));
+	}
+
+	private Mono<ResponseEntity<OwnerDetails>> getOwnerDetails(int ownerId, Optional<OwnerDetailsCache.Entry> cached) {
+		return cached.map(entry -> Mono.just(toResponse(entry))).orElseGet(() -> aggregateOwnerDetails(ownerId));
+	}
 
+	private Optional<OwnerDetailsCache.Entry> cached(int ownerId, ContextView context) {
+		// the warmup exercises the aggregation itself rather than the cache
+		return WarmupWebFilter.isWarmup(context) ? Optional.empty() : ownerDetailsCache.get(ownerId);
+	}
+
+	private Mono<ResponseEntity<OwnerDetails>> aggregateOwnerDetails(int ownerId) {
+		return Mono.deferContextual(context -> {
+			long version = ownerDetailsCache.version();
+			// neither degraded nor warmup aggregates are cached
+			AtomicBoolean uncacheable = new AtomicBoolean(WarmupWebFilter.isWarmup(context));
+			return resilience.run("customers-service", customersServiceClient.getOwner(ownerId))
+					// the batch loader guards the visits-service call itself
+					.flatMap(owner -> visitsBatchLoader.getVisitsForPets(owner.getPetIds()).onErrorResume(throwable -> {
+						uncacheable.set(true);
+						return lastKnownVisits(ownerId);
+					}).map(addVisitsToOwner(owner)))
+					.map(owner -> uncacheable.get() ? ResponseEntity.ok(owner)
+							: toResponse(ownerDetailsCache.put(ownerId, owner, version)))
+					.onErrorResume(throwable -> lastKnownOwner(ownerId, throwable).map(ResponseEntity::ok));
+		});
+	}
+
+	/**
+	 * Sparse variant of {@link #getOwnerDetails(int)} with only the requested properties,
+	 * e.g. {@code fields=id,lastName,pets.name}. The visits service is not called unless
+	 * visits are requested.
+	 */
+	@GetMapping(value = "owners/{ownerId}", params = "fields")
+	public Mono<JsonNode> getOwnerDetails(final @PathVariable int ownerId, @RequestParam("fields") String fields) {
+		FieldSet fieldSet = FieldSet.parse(fields);
+		return Mono.deferContextual(context -> {
+			Optional<OwnerDetailsCache.Entry> cached = cached(ownerId, context);
+			Mono<OwnerDetails> owner;
+			if (fieldSet.includes("pets.visits") || cached.isPresent()) {
+				owner = getOwnerDetails(ownerId, cached).map(HttpEntity::getBody);
+			}
+			else {
+				owner = resilience.run("customers-service", customersServiceClient.getOwner(ownerId))
+						.onErrorResume(throwable -> lastKnownOwner(ownerId, throwable));
+			}
+			return owner.map(it -> fieldSet.prune(objectMapper.valueToTree(it)));
+		});
+	}
+
+	/**
+	 * Visits of all the pets of an owner, newest first. Each pet's visits are streamed in
+	 * that order by the visits service and merged as they are consumed, so at most
+	 * {@code limit} visits per pet are ever fetched. The next page is the one before the
+	 * date and id of the last visit received, e.g. {@code before=2013-01-04&beforeId=7}.
+	 */
+	@GetMapping(value = "owners/{ownerId}/timeline")
+	public Flux<VisitDetails> getOwnerTimeline(final @PathVariable int ownerId,
+			@RequestParam(value = "limit", defaultValue = "20") int limit,
+			@RequestParam(value = "before", required = false) @DateTimeFormat(iso = ISO.DATE) LocalDate before,
+			@RequestParam(value = "beforeId", defaultValue = "" + Integer.MAX_VALUE) int beforeId) {
+		int size = Math.max(1, Math.min(limit, MAX_TIMELINE_SIZE));
+		return resilience.run("customers-service", customersServiceClient.getOwner(ownerId))
+				.onErrorResume(throwable -> lastKnownOwner(ownerId, throwable))
+				.flatMapMany(owner -> mergeTimelines(owner.getPetIds().stream()
+						.map(petId -> resilience.run("visits-service",
+								visitsServiceClient.getVisitTimelineForPet(ownerId, petId, before, beforeId, size)))
+						.collect(Collectors.toList()), size))
+				.take(size);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Flux<VisitDetails> mergeTimelines(List<Flux<VisitDetails>> timelines, int prefetch) {
+		return Flux.mergeComparing(prefetch, TIMELINE_ORDER, timelines.toArray(new Flux[0]));
+	}
+
+	private Mono<OwnerDetails> lastKnownOwner(int ownerId, Throwable throwable) {
+		return ownerDetailsCache.getLastKnown(ownerId).map(Mono::just).orElseGet(() -> Mono.error(throwable));
+	}
+
+	private ResponseEntity<OwnerDetails> toResponse(OwnerDetailsCache.Entry entry) {
+		return ResponseEntity.ok().eTag(entry.getETag()).body(entry.getOwnerDetails());
+	}
+
+	/**
+	 * Keyset page of owners enriched with their visit statistics, fetched with a single
+	 * grouped visits call per page.
+	 */
+	@GetMapping(value = "owners")
+	public Mono<OwnersPage> getOwners(@RequestParam(value = "after", defaultValue = "0") int after,
+			@RequestParam(value = "size", defaultValue = "20") int size) {
+		return getOwners(after, size, true);
+	}
+
+	/**
+	 * Sparse variant of {@link #getOwners(int, int)}, the fields apply to each owner of
+	 * the page. Visit statistics are only fetched when requested.
+	 */
+	@GetMapping(value = "owners", params = "fields")
+	public Mono<JsonNode> getOwners(@RequestParam(value = "after", defaultValue = "0") int after,
+			@RequestParam(value = "size", defaultValue = "20") int size, @RequestParam("fields") String fields) {
+		FieldSet fieldSet = FieldSet.parse(fields);
+		boolean withVisitStatistics = fieldSet.includes("visitCount") || fieldSet.includes("lastVisitDate");
+		return getOwners(after, size, withVisitStatistics).map(page -> {
+			JsonNode json = objectMapper.valueToTree(page);
+			fieldSet.prune(json.get("items"));
+			return json;
+		});
+	}
+
+	private Mono<OwnersPage> getOwners(int after, int size, boolean withVisitStatistics) {
+		return resilience.run("customers-service", customersServiceClient.getOwners(after, size)).flatMap(page -> {
+			if (!withVisitStatistics || page.getPetIds().isEmpty()) {
+				return Mono.just(page);
+			}
+			return resilience.run("visits-service", visitsServiceClient.getVisitSummariesForPets(page.getPetIds()),
+					throwable -> Mono.just(new VisitSummaries())).map(addVisitSummariesToOwners(page));
+		});
+	}
+
+	private Function<VisitSummaries, OwnersPage> addVisitSummariesToOwners(OwnersPage page) {
+		return summaries -> {
+			Map<Integer, VisitSummary> byPetId = summaries.getItems().stream()
+					.collect(Collectors.toMap(VisitSummary::getPetId, Function.identity()));
+			for (OwnerSummary owner : page.getItems()) {
+				owner.getPetIds().stream().map(byPetId::get).filter(Objects::nonNull).forEach(summary -> {
+					owner.setVisitCount(owner.getVisitCount() + summary.getCount());
+					// visits may have no date, a pet having only those has no last visit date
+					if (summary.getLastVisitDate() != null && (owner.getLastVisitDate() == null
+							|| summary.getLastVisitDate().compareTo(owner.getLastVisitDate()) > 0)) {
+						owner.setLastVisitDate(summary.getLastVisitDate());
+					}
+				});
+			}
+			return page;
+		};
 	}
 
 	private Function<Visits, OwnerDetails> addVisitsToOwner(OwnerDetails owner) {
 		return visits -> {
-			owner.getPets().forEach(pet -> pet.getVisits().addAll(
-					visits.getItems().stream().filter(v -> v.getPetId() == pet.getId()).collect(Collectors.toList())));
+			Map<Integer, List<VisitDetails>> byPetId = visits.getItems().stream()
+					.collect(Collectors.groupingBy(VisitDetails::getPetId));
+			owner.getPets().forEach(
+					pet -> pet.getVisits().addAll(byPetId.getOrDefault(pet.getId(), Collections.emptyList())));
 			return owner;
 		};
 	}
 
-	private Mono<Visits> emptyVisitsForPets() {
-		return Mono.just(new Visits());
+	private Mono<Visits> lastKnownVisits(int ownerId) {
+		Visits visits = new Visits();
+		ownerDetailsCache.getLastKnown(ownerId)
+				.ifPresent(owner -> owner.getPets().forEach(pet -> visits.getItems().addAll(pet.getVisits())));
+		return Mono.just(visits);
 	}
 
 }
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sparse fieldset parsed from a {@code fields} request parameter such as
+ * {@code id,lastName,pets.name}: the selected JSON properties, where a dotted path
+ * selects a nested property and a property without nested paths is kept whole.
+ */
+final class FieldSet {
+
+	private final Map<String, FieldSet> fields = new LinkedHashMap<>();
+
+	static FieldSet parse(String fields) {
+		FieldSet root = new FieldSet();
+		for (String path : fields.split(",")) {
+			FieldSet node = root;
+			for (String name : path.trim().split("\\.")) {
+				if (!name.isEmpty()) {
+					node = node.fields.computeIfAbsent(name, it -> new FieldSet());
+				}
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * Whether the property at the given dotted path is part of the response.
+	 */
+	boolean includes(String path) {
+		FieldSet node = this;
+		for (String name : path.split("\\.")) {
+			if (node.fields.isEmpty()) {
+				return true;
+			}
+			node = node.fields.get(name);
+			if (node == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the properties that are not selected, in place.
+	 */
+	JsonNode prune(JsonNode json) {
+		if (fields.isEmpty()) {
+			return json;
+		}
+		if (json.isArray()) {
+			json.forEach(this::prune);
+		}
+		else if (json.isObject()) {
+			ObjectNode object = (ObjectNode) json;
+			object.retain(fields.keySet());
+			fields.forEach((name, nested) -> {
+				JsonNode value = object.get(name);
+				if (value != null) {
+					nested.prune(value);
+				}
+			});
+		}
+		return json;
+	}
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Owner row of the owner list, enriched with visit statistics of all its pets.
+ */
+@Data
+public class OwnerSummary {
+
+	private int id;
+
+	private String firstName;
+
+	private String lastName;
+
+	private String address;
+
+	private String city;
+
+	private String telephone;
+
+	private final List<PetDetails> pets = new ArrayList<>();
+
+	private long visitCount;
+
+	private String lastVisitDate;
+
+	@JsonIgnore
+	public List<Integer> getPetIds() {
+		return pets.stream().map(PetDetails::getId).collect(toList());
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Keyset page of owners: {@code next} is the cursor of the following page, or
+ * {@code null} on the last page.
+ */
+@Data
+public class OwnersPage {
+
+	private final List<OwnerSummary> items = new ArrayList<>();
+
+	private Integer next;
+
+	@JsonIgnore
+	public List<Integer> getPetIds() {
+		return items.stream().flatMap(owner -> owner.getPetIds().stream()).collect(toList());
+	}
+
+}
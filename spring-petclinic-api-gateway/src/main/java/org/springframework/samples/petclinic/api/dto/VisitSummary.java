@@ -0,0 +1,34 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Number of visits and date of the last visit of a single pet.
+ */
+@Data
+@NoArgsConstructor
+public class VisitSummary {
+
+	private int petId;
+
+	private long count;
+
+	private String lastVisitDate;
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import lombok.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Time limit of the calls to each downstream service, derived from its recent latency:
+ * the configured percentile times the multiplier, kept between {@code min-timeout} and
+ * {@code timeout}. Calls that time out are observed at the time limit, so that the limit
+ * grows back when the service slows down instead of cutting every call short. Latencies
+ * are published as {@code petclinic.gateway.downstream.latency}.
+ * <p>
+ * Both the percentile and the number of samples it is taken from cover the same rotating
+ * window. The time limit is recomputed at most once a second, as reading the percentile
+ * copies the whole histogram.
+ */
+@Component
+public class AdaptiveTimeouts {
+
+	static final Duration REFRESH = Duration.ofSeconds(1);
+
+	/**
+	 * Parts of the window rotated in turn, by the percentile histogram as by the samples
+	 * count.
+	 */
+	private static final int BUFFER_LENGTH = 3;
+
+	private final ApiGatewayProperties.Resilience properties;
+
+	private final MeterRegistry registry;
+
+	private final Clock clock;
+
+	private final ConcurrentMap<String, ServiceLatency> latencies = new ConcurrentHashMap<>();
+
+	public AdaptiveTimeouts(ApiGatewayProperties properties, MeterRegistry registry) {
+		this.properties = properties.getResilience();
+		this.registry = registry;
+		this.clock = registry.config().clock();
+	}
+
+	public Duration timeout(String serviceId) {
+		return latency(serviceId).timeout();
+	}
+
+	public void record(String serviceId, Duration latency) {
+		latency(serviceId).record(latency);
+	}
+
+	/**
+	 * Current time limit and how it was derived, for every service called so far.
+	 */
+	public Map<String, Snapshot> snapshots() {
+		Map<String, Snapshot> snapshots = new TreeMap<>();
+		latencies.forEach((serviceId, latency) -> snapshots.put(serviceId, latency.refresh()));
+		return snapshots;
+	}
+
+	private ServiceLatency latency(String serviceId) {
+		return latencies.computeIfAbsent(serviceId, ServiceLatency::new);
+	}
+
+	private final class ServiceLatency {
+
+		private final String serviceId;
+
+		private final Timer timer;
+
+		private final LongAdder[] samples = new LongAdder[BUFFER_LENGTH];
+
+		private final long rotateEveryMillis;
+
+		private volatile int current;
+
+		private volatile long rotatedAt;
+
+		private volatile Snapshot snapshot;
+
+		private volatile long snapshotAt;
+
+		private ServiceLatency(String serviceId) {
+			ApiGatewayProperties.AdaptiveTimeouts adaptive = properties.getAdaptiveTimeouts();
+			this.serviceId = serviceId;
+			this.timer = Timer.builder("petclinic.gateway.downstream.latency").tag("service", serviceId)
+					.publishPercentiles(adaptive.getPercentile()).distributionStatisticExpiry(adaptive.getWindow())
+					.distributionStatisticBufferLength(BUFFER_LENGTH).register(registry);
+			for (int i = 0; i < BUFFER_LENGTH; i++) {
+				samples[i] = new LongAdder();
+			}
+			this.rotateEveryMillis = Math.max(1, adaptive.getWindow().toMillis() / BUFFER_LENGTH);
+			this.rotatedAt = clock.wallTime();
+		}
+
+		private void record(Duration latency) {
+			timer.record(latency);
+			rotate();
+			samples[current].increment();
+		}
+
+		private Duration timeout() {
+			Snapshot cached = snapshot;
+			if (cached == null || clock.monotonicTime() - snapshotAt >= REFRESH.toNanos()) {
+				cached = refresh();
+			}
+			return cached.timeout;
+		}
+
+		private Snapshot refresh() {
+			ApiGatewayProperties.AdaptiveTimeouts adaptive = properties.getAdaptiveTimeouts();
+			ApiGatewayProperties.Downstream downstream = properties.forService(serviceId);
+			Duration percentile = null;
+			for (ValueAtPercentile value : timer.takeSnapshot().percentileValues()) {
+				// nothing observed within the window reads as 0
+				if (value.value() > 0) {
+					percentile = Duration.ofNanos((long) value.value(TimeUnit.NANOSECONDS));
+				}
+			}
+			long count = samples();
+			Duration timeout = downstream.getTimeout();
+			if (adaptive.isEnabled() && percentile != null && count >= adaptive.getMinSamples()) {
+				long nanos = (long) (percentile.toNanos() * adaptive.getMultiplier());
+				nanos = Math.max(downstream.getMinTimeout().toNanos(),
+						Math.min(downstream.getTimeout().toNanos(), nanos));
+				timeout = Duration.ofNanos(nanos);
+			}
+			Snapshot refreshed = new Snapshot(timeout, percentile, count, downstream.getMinTimeout(),
+					downstream.getTimeout());
+			snapshotAt = clock.monotonicTime();
+			snapshot = refreshed;
+			return refreshed;
+		}
+
+		private long samples() {
+			rotate();
+			long count = 0;
+			for (LongAdder part : samples) {
+				count += part.sum();
+			}
+			return count;
+		}
+
+		/**
+		 * Clears the oldest parts of the window that have elapsed since the last rotation.
+		 */
+		private void rotate() {
+			long elapsed = clock.wallTime() - rotatedAt;
+			if (elapsed < rotateEveryMillis) {
+				return;
+			}
+			synchronized (this) {
+				elapsed = clock.wallTime() - rotatedAt;
+				if (elapsed < rotateEveryMillis) {
+					return;
+				}
+				long parts = Math.min(BUFFER_LENGTH, elapsed / rotateEveryMillis);
+				for (int i = 0; i < parts; i++) {
+					int next = (current + 1) % BUFFER_LENGTH;
+					samples[next].reset();
+					current = next;
+				}
+				rotatedAt += elapsed - elapsed % rotateEveryMillis;
+			}
+		}
+
+	}
+
+	@Value
+	public static class Snapshot {
+
+		Duration timeout;
+
+		/**
+		 * Observed latency percentile, {@code null} without recent calls.
+		 */
+		Duration percentile;
+
+		/**
+		 * Calls observed within the window.
+		 */
+		long samples;
+
+		Duration minTimeout;
+
+		Duration maxTimeout;
+
+	}
+
+}
@@ -0,0 +1,517 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.http.HttpMethod;
+
+/**
+ * Typesafe custom configuration.
+ */
+@Data
+@ConfigurationProperties(prefix = "api-gateway")
+public class ApiGatewayProperties {
+
+	private final HttpClients httpClients = new HttpClients();
+
+	private final Resilience resilience = new Resilience();
+
+	private final Deadline deadline = new Deadline();
+
+	private final LoadBalancing loadBalancing = new LoadBalancing();
+
+	private final Collapsing collapsing = new Collapsing();
+
+	private final Hedging hedging = new Hedging();
+
+	private final Retry retry = new Retry();
+
+	private final VisitsBatching visitsBatching = new VisitsBatching();
+
+	private final OwnerDetailsCache ownerDetailsCache = new OwnerDetailsCache();
+
+	private final Recording recording = new Recording();
+
+	private final Warmup warmup = new Warmup();
+
+	private final HotKeys hotKeys = new HotKeys();
+
+	@Data
+	public static class HttpClients {
+
+		/**
+		 * Connection pool of every downstream service without an entry in services.
+		 */
+		private ConnectionPool defaults = new ConnectionPool();
+
+		/**
+		 * Connection pools per downstream service id, e.g. visits-service.
+		 */
+		private Map<String, ConnectionPool> services = new HashMap<>();
+
+		/**
+		 * Preferred response format of the downstream services: application/json,
+		 * application/x-jackson-smile or application/cbor. JSON stays acceptable as a
+		 * fallback.
+		 */
+		private String format = "application/x-jackson-smile";
+
+		/**
+		 * Whether to ask for gzip compressed responses.
+		 */
+		private boolean compression = true;
+
+		public ConnectionPool forService(String serviceId) {
+			return services.getOrDefault(serviceId, defaults);
+		}
+
+	}
+
+	@Data
+	public static class ConnectionPool {
+
+		private int maxConnections = 100;
+
+		/**
+		 * Requests allowed to wait for a connection, -1 for no limit.
+		 */
+		private int maxPendingAcquires = 500;
+
+		private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+
+		private Duration maxIdleTime = Duration.ofSeconds(30);
+
+		private Duration maxLifeTime = Duration.ofMinutes(5);
+
+		/**
+		 * How often idle and expired connections are evicted in the background.
+		 */
+		private Duration evictionInterval = Duration.ofSeconds(30);
+
+		private boolean keepAlive = true;
+
+		/**
+		 * Whether to negotiate cleartext HTTP/2 (h2c) so that requests are multiplexed.
+		 */
+		private boolean http2 = false;
+
+	}
+
+	@Data
+	public static class Resilience {
+
+		/**
+		 * Circuit breaker and bulkhead of every downstream service without an entry in
+		 * services.
+		 */
+		private Downstream defaults = new Downstream();
+
+		/**
+		 * Circuit breakers and bulkheads per downstream service id, e.g. visits-service.
+		 */
+		private Map<String, Downstream> services = new HashMap<>();
+
+		private final AdaptiveTimeouts adaptiveTimeouts = new AdaptiveTimeouts();
+
+		public Downstream forService(String serviceId) {
+			return services.getOrDefault(serviceId, defaults);
+		}
+
+	}
+
+	@Data
+	public static class AdaptiveTimeouts {
+
+		/**
+		 * Whether the time limit of each call follows the observed latency of the service,
+		 * rather than always being the timeout of the service.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * Percentile of the recent latencies the time limit is derived from.
+		 */
+		private double percentile = 0.99;
+
+		/**
+		 * Headroom given above the percentile.
+		 */
+		private double multiplier = 2;
+
+		/**
+		 * Calls observed before the time limit adapts; until then it is the timeout.
+		 */
+		private int minSamples = 50;
+
+		/**
+		 * How long a latency is taken into account.
+		 */
+		private Duration window = Duration.ofMinutes(1);
+
+	}
+
+	@Data
+	public static class Downstream {
+
+		private float failureRateThreshold = 50;
+
+		private float slowCallRateThreshold = 100;
+
+		private Duration slowCallDurationThreshold = Duration.ofSeconds(2);
+
+		private int slidingWindowSize = 100;
+
+		private int minimumNumberOfCalls = 20;
+
+		private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+
+		/**
+		 * Time limit of a single call, the ceiling of the adaptive time limit.
+		 */
+		private Duration timeout = Duration.ofSeconds(4);
+
+		/**
+		 * Floor of the adaptive time limit.
+		 */
+		private Duration minTimeout = Duration.ofMillis(50);
+
+		/**
+		 * Calls allowed in flight at once; further calls are rejected without waiting.
+		 */
+		private int maxConcurrentCalls = 50;
+
+	}
+
+	@Data
+	public static class Deadline {
+
+		/**
+		 * Budget of a request from the moment the gateway receives it, forwarded to the
+		 * services that take part in answering it.
+		 */
+		private Duration timeout = Duration.ofSeconds(4);
+
+	}
+
+	@Data
+	public static class LoadBalancing {
+
+		/**
+		 * Time constant of the exponentially weighted moving average of latencies.
+		 */
+		private Duration decay = Duration.ofSeconds(10);
+
+		/**
+		 * Consecutive failures (errors or 5xx) after which an instance is ejected.
+		 */
+		private int maxConsecutiveFailures = 5;
+
+		/**
+		 * Average latency over which an instance is ejected as too slow.
+		 */
+		private Duration slowThreshold = Duration.ofSeconds(2);
+
+		/**
+		 * How long an ejected instance is kept out of the rotation.
+		 */
+		private Duration ejectionTime = Duration.ofSeconds(30);
+
+		/**
+		 * Services whose requests are routed by consistent hashing of a request key
+		 * rather than by latency, keyed by service id, e.g. customers-service.
+		 */
+		private Map<String, Sticky> sticky = new HashMap<>();
+
+	}
+
+	@Data
+	public static class Sticky {
+
+		/**
+		 * Request header holding the key, e.g. X-Owner-Id. Takes precedence over paths.
+		 */
+		private String header;
+
+		/**
+		 * Path patterns capturing the key as their only URI variable, e.g. /owners/{ownerId}/**.
+		 */
+		private List<String> paths = new ArrayList<>();
+
+		/**
+		 * Query parameter holding the key when neither header nor paths match.
+		 */
+		private String parameter;
+
+		/**
+		 * How far above the average requests in flight an instance may go before its
+		 * keys spill over to the next instance on the ring.
+		 */
+		private double loadFactor = 1.25;
+
+		/**
+		 * Points of each instance on the hash ring.
+		 */
+		private int virtualNodes = 100;
+
+	}
+
+	@Data
+	public static class Collapsing {
+
+		/**
+		 * Whether concurrent identical GET requests of the aggregation clients share a
+		 * single downstream call.
+		 */
+		private boolean enabled = true;
+
+	}
+
+	@Data
+	public static class Hedging {
+
+		/**
+		 * Downstream service ids whose GETs may be hedged; empty disables hedging.
+		 */
+		private Set<String> services = new HashSet<>();
+
+		/**
+		 * Delay before the hedge is sent, until enough latency samples are known.
+		 */
+		private Duration delay = Duration.ofMillis(100);
+
+		/**
+		 * Whether to hedge once the observed p95 latency of the service is exceeded.
+		 */
+		private boolean adaptive = true;
+
+		private Duration minDelay = Duration.ofMillis(10);
+
+		/**
+		 * Latency samples needed before the observed p95 replaces the fixed delay.
+		 */
+		private int minSamples = 100;
+
+		/**
+		 * Hedges allowed per request sent, e.g. 0.1 for at most 10% extra load.
+		 */
+		private double budgetRatio = 0.1;
+
+		/**
+		 * Hedges that may be sent in a burst once the budget has been saved up.
+		 */
+		private int maxBudget = 10;
+
+	}
+
+	@Data
+	public static class Retry {
+
+		/**
+		 * Retries of a single request, on top of its first attempt.
+		 */
+		private int maxRetries = 2;
+
+		/**
+		 * Methods safe to retry; others are never retried.
+		 */
+		private Set<HttpMethod> methods = new HashSet<>(Collections.singleton(HttpMethod.GET));
+
+		/**
+		 * Response statuses worth another attempt, besides connection failures.
+		 */
+		private Set<Integer> statuses = new HashSet<>(Arrays.asList(502, 503, 504));
+
+		/**
+		 * Retries allowed per successful request, e.g. 0.2 for at most 20% extra load.
+		 */
+		private double budgetRatio = 0.2;
+
+		/**
+		 * Retries that may be sent in a burst once the budget has been saved up.
+		 */
+		private int maxBudget = 10;
+
+		/**
+		 * Backoff before the first retry, doubled for each further one and jittered.
+		 */
+		private Duration firstBackoff = Duration.ofMillis(20);
+
+		private Duration maxBackoff = Duration.ofMillis(200);
+
+	}
+
+	@Data
+	public static class VisitsBatching {
+
+		/**
+		 * Whether visits lookups of concurrent owner details requests are merged into
+		 * one multi-get.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * How long the first lookup of a batch waits for other lookups to join.
+		 */
+		private Duration window = Duration.ofMillis(5);
+
+		/**
+		 * Number of pet ids after which a batch is sent without waiting for the window.
+		 */
+		private int maxBatchSize = 100;
+
+	}
+
+	@Data
+	public static class OwnerDetailsCache {
+
+		/**
+		 * Upper bound of the cache, measured in bytes of serialized JSON.
+		 */
+		private long maxWeight = 16 * 1024 * 1024;
+
+		/**
+		 * Safety net for writes that do not go through the gateway routes.
+		 */
+		private Duration timeToLive = Duration.ofMinutes(5);
+
+		/**
+		 * How long the last complete aggregate of an owner is kept as a fallback for
+		 * when a downstream service fails, even after its cache entry was dropped.
+		 */
+		private Duration maxStale = Duration.ofHours(1);
+
+	}
+
+	@Data
+	public static class Recording {
+
+		/**
+		 * Whether the requests reaching the gateway are written to the traffic log.
+		 */
+		private boolean enabled = false;
+
+		private String directory = "traffic";
+
+		/**
+		 * Size after which the current segment is closed and a new one started.
+		 */
+		private long maxFileSize = 64 * 1024 * 1024;
+
+		/**
+		 * Segments kept on disk, the oldest ones being deleted first.
+		 */
+		private int maxFiles = 8;
+
+		/**
+		 * Requests with a larger body are not recorded rather than recorded truncated.
+		 */
+		private int maxBodySize = 64 * 1024;
+
+		/**
+		 * Records waiting to be written, beyond which new ones are dropped.
+		 */
+		private int queueCapacity = 10_000;
+
+		/**
+		 * Headers never written to disk.
+		 */
+		private Set<String> excludedHeaders = new HashSet<>(Arrays.asList("Authorization", "Cookie"));
+
+	}
+
+	@Data
+	public static class Warmup {
+
+		/**
+		 * Whether synthetic requests are sent through the hot paths before the instance
+		 * takes traffic.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * Upper bound of the warmup, after which the instance reports UP anyway.
+		 */
+		private Duration budget = Duration.ofSeconds(30);
+
+		private int requests = 5000;
+
+		/**
+		 * Requests sent in parallel, which is also the number of connections opened in
+		 * each downstream pool.
+		 */
+		private int concurrency = 4;
+
+	}
+
+	@Data
+	public static class HotKeys {
+
+		private boolean enabled = true;
+
+		/**
+		 * Hot keys reported for each kind of key.
+		 */
+		private int topK = 20;
+
+		/**
+		 * Counters per row of the count-min sketch: estimates exceed true counts by at
+		 * most e/width of the requests of the window, with probability 1 - e^-depth.
+		 */
+		private int width = 2048;
+
+		private int depth = 4;
+
+		/**
+		 * Length over which hot keys and their rates are reported.
+		 */
+		private Duration window = Duration.ofMinutes(1);
+
+		/**
+		 * Kinds of key to track, such as owner or pet, and where to find them.
+		 */
+		private Map<String, KeySource> keys = new LinkedHashMap<>();
+
+	}
+
+	@Data
+	public static class KeySource {
+
+		/**
+		 * Gateway path patterns whose URI variable is the key, the first match wins.
+		 */
+		private List<String> paths = new ArrayList<>();
+
+		/**
+		 * Query parameter holding keys, possibly several or comma separated.
+		 */
+		private String parameter;
+
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.function.Function;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.RouteToRequestUrlFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.CLIENT_RESPONSE_CONN_ATTR;
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * Route filter retrying idempotent requests that could not reach the service or got a
+ * retryable status, within the {@link RetryBudgets retry budget} of the service, unlike
+ * the stock Retry filter which retries every failure.
+ *
+ * <pre>
+ * filters:
+ *   - BudgetedRetry
+ * </pre>
+ *
+ * It runs between the resolution of the route URL and the load balancer, so each retry
+ * is sent to a freshly chosen instance, and decides before NettyWriteResponseFilter has
+ * written anything to the client.
+ */
+@Component
+public class BudgetedRetryGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+	private final RetryBudgets retryBudgets;
+
+	public BudgetedRetryGatewayFilterFactory(RetryBudgets retryBudgets) {
+		super(Object.class);
+		this.retryBudgets = retryBudgets;
+	}
+
+	@Override
+	public GatewayFilter apply(Object config) {
+		return new OrderedGatewayFilter((exchange, chain) -> {
+			URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+			if (url == null || !retryBudgets.isRetryable(exchange.getRequest().getMethod())) {
+				return chain.filter(exchange);
+			}
+			return attempt(exchange, chain, url, 0);
+		}, RouteToRequestUrlFilter.ROUTE_TO_URL_FILTER_ORDER + 1);
+	}
+
+	private Mono<Void> attempt(ServerWebExchange exchange, GatewayFilterChain chain, URI url, int retries) {
+		String serviceId = url.getHost();
+		// decide on the outcome of this attempt only, not on the ones of the retries
+		return chain.filter(exchange).then(Mono.fromSupplier(() -> {
+			Integer status = exchange.getResponse().getRawStatusCode();
+			if (status == null || !retryBudgets.isRetryable(status)) {
+				retryBudgets.succeeded(serviceId);
+				return Mono.<Void>empty();
+			}
+			if (exchange.getResponse().isCommitted() || !retryBudgets.tryRetry(serviceId, retries)) {
+				return Mono.<Void>empty();
+			}
+			return retry(exchange, chain, url, retries);
+		})).onErrorResume(ex -> Mono.just(isConnectionFailure(ex) && !exchange.getResponse().isCommitted()
+				&& retryBudgets.tryRetry(serviceId, retries) ? retry(exchange, chain, url, retries)
+						: Mono.<Void>error(ex)))
+				.flatMap(Function.identity());
+	}
+
+	private Mono<Void> retry(ServerWebExchange exchange, GatewayFilterChain chain, URI url, int retries) {
+		Connection connection = exchange.getAttribute(CLIENT_RESPONSE_CONN_ATTR);
+		if (connection != null) {
+			// the failed response body is not wanted
+			connection.dispose();
+		}
+		exchange.getAttributes().remove(CLIENT_RESPONSE_CONN_ATTR);
+		exchange.getAttributes().remove(CLIENT_RESPONSE_ATTR);
+		ServerWebExchangeUtils.reset(exchange);
+		// back to lb:// so that the load balancer chooses again
+		exchange.getAttributes().put(GATEWAY_REQUEST_URL_ATTR, url);
+		return Mono.delay(retryBudgets.backoff(retries))
+				.then(Mono.defer(() -> attempt(exchange, chain, url, retries + 1)));
+	}
+
+	private static boolean isConnectionFailure(Throwable ex) {
+		for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+			if (cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
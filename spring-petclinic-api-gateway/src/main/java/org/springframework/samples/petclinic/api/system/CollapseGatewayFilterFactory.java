@@ -0,0 +1,152 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.reactivestreams.Publisher;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.NettyWriteResponseFilter;
+import org.springframework.cloud.gateway.filter.OrderedGatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Route filter sharing one downstream call between concurrent identical GET requests.
+ * The first request (the leader) is proxied as usual while its response body is
+ * recorded; requests arriving while it is in flight get a copy of that response. Only
+ * requests whose headers that can change the response (content negotiation,
+ * credentials) are equal are collapsed, since the leader's headers are replayed as is.
+ *
+ * <pre>
+ * filters:
+ *   - Collapse
+ * </pre>
+ */
+@Component
+public class CollapseGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+	private static final String LEADER_ATTR = CollapseGatewayFilterFactory.class.getName() + ".leader";
+
+	/**
+	 * Forwarded request headers the downstream response may vary on.
+	 */
+	private static final List<String> KEY_HEADERS = Arrays.asList(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING,
+			HttpHeaders.ACCEPT_LANGUAGE, HttpHeaders.AUTHORIZATION, HttpHeaders.COOKIE);
+
+	private final RequestCollapser requestCollapser;
+
+	public CollapseGatewayFilterFactory(RequestCollapser requestCollapser) {
+		super(Object.class);
+		this.requestCollapser = requestCollapser;
+	}
+
+	@Override
+	public GatewayFilter apply(Object config) {
+		// must wrap the response before NettyWriteResponseFilter writes it
+		return new OrderedGatewayFilter((exchange, chain) -> {
+			ServerHttpRequest request = exchange.getRequest();
+			if (request.getMethod() != HttpMethod.GET) {
+				return chain.filter(exchange);
+			}
+			Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+			String name = route != null ? route.getId() : request.getPath().value();
+			String key = key(request);
+			return requestCollapser.collapse(name, key, () -> proxy(exchange, chain)).flatMap(recorded -> {
+				if (Boolean.TRUE.equals(exchange.getAttribute(LEADER_ATTR))) {
+					return Mono.empty();
+				}
+				// the leader failed before writing a body: proxy this request on its own
+				return recorded.map(it -> it.writeTo(exchange.getResponse()))
+						.orElseGet(() -> chain.filter(exchange));
+			});
+		}, NettyWriteResponseFilter.WRITE_RESPONSE_FILTER_ORDER - 1);
+	}
+
+	static String key(ServerHttpRequest request) {
+		StringBuilder key = new StringBuilder(request.getURI().toString());
+		for (String header : KEY_HEADERS) {
+			key.append('|').append(request.getHeaders().getOrDefault(header, Collections.emptyList()));
+		}
+		return key.toString();
+	}
+
+	private Mono<Optional<RecordedResponse>> proxy(ServerWebExchange exchange, GatewayFilterChain chain) {
+		return Mono.defer(() -> {
+			exchange.getAttributes().put(LEADER_ATTR, true);
+			AtomicReference<RecordedResponse> recorded = new AtomicReference<>();
+			ServerHttpResponseDecorator response = new ServerHttpResponseDecorator(exchange.getResponse()) {
+
+				@Override
+				public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+					return DataBufferUtils.join(body).map(joined -> {
+						byte[] bytes = new byte[joined.readableByteCount()];
+						joined.read(bytes);
+						DataBufferUtils.release(joined);
+						return bytes;
+					}).defaultIfEmpty(new byte[0]).flatMap(bytes -> {
+						recorded.set(new RecordedResponse(getRawStatusCode(), getHeaders(), bytes));
+						return super.writeWith(Mono.just(bufferFactory().wrap(bytes)));
+					});
+				}
+
+			};
+			return chain.filter(exchange.mutate().response(response).build())
+					.then(Mono.fromSupplier(() -> Optional.ofNullable(recorded.get())));
+		});
+	}
+
+	private static final class RecordedResponse {
+
+		private final Integer status;
+
+		private final HttpHeaders headers = new HttpHeaders();
+
+		private final byte[] body;
+
+		private RecordedResponse(Integer status, HttpHeaders headers, byte[] body) {
+			this.status = status;
+			this.headers.addAll(headers);
+			this.body = body;
+		}
+
+		private Mono<Void> writeTo(ServerHttpResponse response) {
+			response.setRawStatusCode(status);
+			response.getHeaders().addAll(headers);
+			return response.writeWith(Mono.just(DefaultDataBufferFactory.sharedInstance.wrap(body)));
+		}
+
+	}
+
+}
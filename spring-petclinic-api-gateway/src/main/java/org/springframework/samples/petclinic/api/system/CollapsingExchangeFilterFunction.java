@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Collapses concurrent identical GETs of the aggregation clients into one downstream
+ * exchange. The response body is buffered once and every caller gets its own
+ * {@link ClientResponse} over it, so decoded DTOs are never shared between requests.
+ */
+@Component
+@RequiredArgsConstructor
+public class CollapsingExchangeFilterFunction implements ExchangeFilterFunction {
+
+	private final RequestCollapser requestCollapser;
+
+	private final ApiGatewayProperties properties;
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		if (!properties.getCollapsing().isEnabled() || request.method() != HttpMethod.GET) {
+			return next.exchange(request);
+		}
+		String key = request.url() + "|" + request.headers().getAccept();
+		return requestCollapser
+				.collapse(request.url().getHost(), key, () -> next.exchange(request).flatMap(this::buffer))
+				.map(BufferedResponse::toClientResponse);
+	}
+
+	private Mono<BufferedResponse> buffer(ClientResponse response) {
+		return response.bodyToMono(byte[].class).defaultIfEmpty(new byte[0])
+				.map(body -> new BufferedResponse(response.rawStatusCode(), response.headers().asHttpHeaders(),
+						response.strategies(), body));
+	}
+
+	private static final class BufferedResponse {
+
+		private final int status;
+
+		private final HttpHeaders headers;
+
+		private final ExchangeStrategies strategies;
+
+		private final byte[] body;
+
+		private BufferedResponse(int status, HttpHeaders headers, ExchangeStrategies strategies, byte[] body) {
+			this.status = status;
+			this.headers = headers;
+			this.strategies = strategies;
+			this.body = body;
+		}
+
+		private ClientResponse toClientResponse() {
+			return ClientResponse.create(status, strategies).headers(it -> it.addAll(headers))
+					.body(Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(body))).build();
+		}
+
+	}
+
+}
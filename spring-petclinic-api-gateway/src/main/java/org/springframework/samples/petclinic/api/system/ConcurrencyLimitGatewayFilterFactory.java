@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Route filter bounding the requests in flight to the downstream service of the route
+ * with a limit learnt from its latency (see {@link GradientConcurrencyLimit}). Requests
+ * over the limit are rejected at once with 503 instead of queueing in front of a slow
+ * service. Limits are kept per route id and exposed as
+ * {@code petclinic.gateway.concurrency.limit}, next to the in flight requests and
+ * the rejection counter.
+ *
+ * <pre>
+ * filters:
+ *   - name: ConcurrencyLimit
+ *     args:
+ *       maxLimit: 200
+ * </pre>
+ */
+@Component
+public class ConcurrencyLimitGatewayFilterFactory
+		extends AbstractGatewayFilterFactory<ConcurrencyLimitGatewayFilterFactory.Config> {
+
+	private final MeterRegistry registry;
+
+	private final ConcurrentMap<String, RouteLimit> limits = new ConcurrentHashMap<>();
+
+	public ConcurrencyLimitGatewayFilterFactory(MeterRegistry registry) {
+		super(Config.class);
+		this.registry = registry;
+	}
+
+	@Override
+	public GatewayFilter apply(Config config) {
+		return (exchange, chain) -> {
+			if (WarmupWebFilter.isWarmup(exchange)) {
+				return chain.filter(exchange);
+			}
+			Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+			String routeId = route != null ? route.getId() : "unknown";
+			RouteLimit routeLimit = limits.computeIfAbsent(routeId, id -> new RouteLimit(id, config));
+			if (!routeLimit.limit.tryAcquire()) {
+				routeLimit.rejected.increment();
+				exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+				return exchange.getResponse().setComplete();
+			}
+			long start = System.nanoTime();
+			return chain.filter(exchange).doOnEach(signal -> {
+				if (signal.isOnComplete() || signal.isOnError()) {
+					HttpStatus status = exchange.getResponse().getStatusCode();
+					boolean dropped = signal.isOnError() || (status != null && status.is5xxServerError());
+					routeLimit.limit.release(System.nanoTime() - start, dropped);
+				}
+			}).doOnCancel(() -> routeLimit.limit.release(System.nanoTime() - start, true));
+		};
+	}
+
+	private final class RouteLimit {
+
+		private final GradientConcurrencyLimit limit;
+
+		private final Counter rejected;
+
+		private RouteLimit(String routeId, Config config) {
+			this.limit = new GradientConcurrencyLimit(config);
+			this.rejected = Counter.builder("petclinic.gateway.concurrency.rejected").tag("route", routeId)
+					.register(registry);
+			Gauge.builder("petclinic.gateway.concurrency.limit", limit, GradientConcurrencyLimit::getLimit)
+					.tag("route", routeId).register(registry);
+			Gauge.builder("petclinic.gateway.concurrency.inflight", limit, GradientConcurrencyLimit::getInFlight)
+					.tag("route", routeId).register(registry);
+		}
+
+	}
+
+	@Data
+	public static class Config {
+
+		private int initialLimit = 20;
+
+		private int minLimit = 5;
+
+		private int maxLimit = 200;
+
+		/**
+		 * Latency increase over the long term average tolerated before the limit shrinks.
+		 */
+		private double tolerance = 2.0;
+
+		/**
+		 * Weight of a new estimate in the limit, between 0 and 1.
+		 */
+		private double smoothing = 0.2;
+
+	}
+
+}
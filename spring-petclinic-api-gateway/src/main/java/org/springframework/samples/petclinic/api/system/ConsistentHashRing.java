@@ -0,0 +1,95 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+/**
+ * Hash ring of nodes, each placed at several virtual points so that keys spread evenly.
+ * A node joining or leaving only moves the keys of its own arcs, about 1/N of them.
+ */
+class ConsistentHashRing {
+
+	private final TreeMap<Long, String> ring = new TreeMap<>();
+
+	private final Set<String> nodes;
+
+	ConsistentHashRing(Collection<String> nodes, int virtualNodes) {
+		this.nodes = new HashSet<>(nodes);
+		for (String node : this.nodes) {
+			for (int i = 0; i < virtualNodes; i++) {
+				ring.put(hash(node + "#" + i), node);
+			}
+		}
+	}
+
+	Set<String> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Walks the ring clockwise from the key and returns the first node accepted by the
+	 * predicate, or {@code null} when none is.
+	 */
+	String select(String key, Predicate<String> accept) {
+		if (ring.isEmpty()) {
+			return null;
+		}
+		Set<String> visited = new HashSet<>();
+		long hash = hash(key);
+		for (Map.Entry<Long, String> point : ring.tailMap(hash, true).entrySet()) {
+			if (visited.size() == nodes.size()) {
+				return null;
+			}
+			if (visited.add(point.getValue()) && accept.test(point.getValue())) {
+				return point.getValue();
+			}
+		}
+		for (Map.Entry<Long, String> point : ring.headMap(hash, false).entrySet()) {
+			if (visited.size() == nodes.size()) {
+				break;
+			}
+			if (visited.add(point.getValue()) && accept.test(point.getValue())) {
+				return point.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 64-bit FNV-1a, finalized with the MurmurHash3 mix so that close keys land far apart.
+	 */
+	static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b;
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Forwards the remaining budget of the request being aggregated, found in the Reactor
+ * context, to the downstream service and cuts the exchange short at the deadline.
+ * Exchanges made outside of a request carry no deadline; merged visits lookups carry the
+ * earliest deadline of their callers.
+ */
+@Component
+public class DeadlineExchangeFilterFunction implements ExchangeFilterFunction {
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		return Mono.deferContextual(context -> {
+			RequestDeadline deadline = context.getOrDefault(RequestDeadline.class, null);
+			if (deadline == null) {
+				return next.exchange(request);
+			}
+			if (deadline.isExpired()) {
+				return Mono.error(new TimeoutException("Deadline exceeded before calling " + request.url()));
+			}
+			ClientRequest forwarded = ClientRequest.from(request)
+					.header(RequestDeadline.HEADER, deadline.toHeaderValue()).build();
+			return next.exchange(forwarded).timeout(deadline.remaining());
+		});
+	}
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.NettyRoutingFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Forwards the remaining budget of the request to the routed service, just before it is
+ * sent, and gives up with a 504 once the deadline has passed, whether before or while
+ * the service is answering.
+ */
+@Component
+public class DeadlineGlobalFilter implements GlobalFilter, Ordered {
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+		RequestDeadline deadline = RequestDeadline.of(exchange);
+		if (deadline == null) {
+			return chain.filter(exchange);
+		}
+		if (deadline.isExpired()) {
+			return Mono.error(new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Deadline exceeded"));
+		}
+		ServerWebExchange forwarded = exchange.mutate().request(
+				request -> request.headers(headers -> headers.set(RequestDeadline.HEADER, deadline.toHeaderValue())))
+				.build();
+		return chain.filter(forwarded).timeout(deadline.remaining()).onErrorMap(TimeoutException.class,
+				ex -> new ResponseStatusException(HttpStatus.GATEWAY_TIMEOUT, "Deadline exceeded", ex));
+	}
+
+	@Override
+	public int getOrder() {
+		return NettyRoutingFilter.ORDER - 1;
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Starts the clock of every request: its {@link RequestDeadline} is
+ * {@code api-gateway.deadline.timeout} from now, or sooner if the caller sent a shorter
+ * {@value RequestDeadline#HEADER}. It is
+ * stored as an exchange attribute for the routes and in the Reactor context for the
+ * aggregation clients.
+ */
+@Component
+@RequiredArgsConstructor
+public class DeadlineWebFilter implements WebFilter, Ordered {
+
+	private final ApiGatewayProperties properties;
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		String requested = exchange.getRequest().getHeaders().getFirst(RequestDeadline.HEADER);
+		RequestDeadline deadline = RequestDeadline.after(properties.getDeadline().getTimeout())
+				.min(RequestDeadline.fromHeaderValue(requested));
+		exchange.getAttributes().put(RequestDeadline.ATTRIBUTE, deadline);
+		return chain.filter(exchange).contextWrite(context -> context.put(RequestDeadline.class, deadline));
+	}
+
+	@Override
+	public int getOrder() {
+		return Ordered.HIGHEST_PRECEDENCE + 10;
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.timelimiter.TimeLimiterOperator;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.github.resilience4j.timelimiter.TimeLimiterConfig;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreaker;
+import org.springframework.cloud.client.circuitbreaker.ReactiveCircuitBreakerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Circuit breaker and semaphore bulkhead of each downstream service, created on first
+ * use and reused afterwards. Both are configured per service id under
+ * {@code api-gateway.resilience}. A full bulkhead rejects the call at once, so a slow
+ * service cannot hold more than its share of the gateway's requests. Each call is time
+ * limited by the current {@link AdaptiveTimeouts adaptive timeout} of the service, and
+ * the latency of its successful calls observed in turn, timeouts counting as the limit.
+ * Warmup calls only get the configured timeout.
+ */
+@Component
+public class DownstreamResilience {
+
+	private final ReactiveCircuitBreakerFactory cbFactory;
+
+	private final ApiGatewayProperties.Resilience properties;
+
+	private final BulkheadRegistry bulkheadRegistry = BulkheadRegistry.ofDefaults();
+
+	private final AdaptiveTimeouts adaptiveTimeouts;
+
+	private final ConcurrentMap<String, Guard> guards = new ConcurrentHashMap<>();
+
+	public DownstreamResilience(ReactiveCircuitBreakerFactory cbFactory, ApiGatewayProperties properties,
+			AdaptiveTimeouts adaptiveTimeouts, MeterRegistry registry) {
+		this.cbFactory = cbFactory;
+		this.properties = properties.getResilience();
+		this.adaptiveTimeouts = adaptiveTimeouts;
+		TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(registry);
+	}
+
+	public <T> Mono<T> run(String serviceId, Mono<T> call) {
+		return run(serviceId, call, Mono::error);
+	}
+
+	public <T> Mono<T> run(String serviceId, Mono<T> call, Function<Throwable, Mono<T>> fallback) {
+		return Mono.deferContextual(context -> {
+			if (WarmupWebFilter.isWarmup(context)) {
+				// failures of a service still starting must not open its circuit or shrink its timeout
+				return call.timeout(properties.forService(serviceId).getTimeout()).onErrorResume(fallback);
+			}
+			Guard guard = guards.computeIfAbsent(serviceId, this::guard);
+			Mono<T> guarded = timeLimited(serviceId, call).transformDeferred(BulkheadOperator.of(guard.bulkhead));
+			return guard.circuitBreaker.run(guarded, fallback);
+		});
+	}
+
+	/**
+	 * Streaming variant of {@link #run(String, Mono)}: the circuit breaker and bulkhead
+	 * apply, the time limit applies to each element rather than to the whole stream.
+	 */
+	public <T> Flux<T> run(String serviceId, Flux<T> call) {
+		return Flux.deferContextual(context -> {
+			if (WarmupWebFilter.isWarmup(context)) {
+				return call;
+			}
+			Guard guard = guards.computeIfAbsent(serviceId, this::guard);
+			return guard.circuitBreaker.run(call.transformDeferred(BulkheadOperator.of(guard.bulkhead)), Flux::error);
+		});
+	}
+
+	private <T> Mono<T> timeLimited(String serviceId, Mono<T> call) {
+		return Mono.defer(() -> {
+			Duration timeout = adaptiveTimeouts.timeout(serviceId);
+			TimeLimiter timeLimiter = TimeLimiter.of(TimeLimiterConfig.custom().timeoutDuration(timeout).build());
+			long start = System.nanoTime();
+			return call.transformDeferred(TimeLimiterOperator.of(timeLimiter)).doOnEach(signal -> {
+				// fast failures (connection refused, no instance) say nothing of the latency
+				if (signal.isOnComplete()) {
+					adaptiveTimeouts.record(serviceId, Duration.ofNanos(System.nanoTime() - start));
+				}
+				else if (signal.isOnError() && signal.getThrowable() instanceof TimeoutException) {
+					adaptiveTimeouts.record(serviceId, timeout);
+				}
+			});
+		});
+	}
+
+	private Guard guard(String serviceId) {
+		BulkheadConfig config = BulkheadConfig.custom()
+				.maxConcurrentCalls(properties.forService(serviceId).getMaxConcurrentCalls())
+				.maxWaitDuration(Duration.ZERO).build();
+		return new Guard(cbFactory.create(serviceId), bulkheadRegistry.bulkhead(serviceId, config));
+	}
+
+	private static final class Guard {
+
+		private final ReactiveCircuitBreaker circuitBreaker;
+
+		private final Bulkhead bulkhead;
+
+		private Guard(ReactiveCircuitBreaker circuitBreaker, Bulkhead bulkhead) {
+			this.circuitBreaker = circuitBreaker;
+			this.bulkhead = bulkhead;
+		}
+
+	}
+
+}
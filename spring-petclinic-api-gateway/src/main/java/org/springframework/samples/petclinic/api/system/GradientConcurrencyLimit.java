@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+/**
+ * Concurrency limit learnt from latency, after the gradient algorithm of Netflix's
+ * concurrency-limits: while the latency of a request stays within {@code tolerance}
+ * times the long term average the limit grows by about its square root, when it
+ * degrades the limit shrinks proportionally, and failures back it off by 10%.
+ */
+final class GradientConcurrencyLimit {
+
+	private static final double BACKOFF_RATIO = 0.9;
+
+	private static final int LONG_RTT_WINDOW = 600;
+
+	private final ConcurrencyLimitGatewayFilterFactory.Config config;
+
+	private double limit;
+
+	private double longRtt;
+
+	private int inFlight;
+
+	GradientConcurrencyLimit(ConcurrencyLimitGatewayFilterFactory.Config config) {
+		this.config = config;
+		this.limit = config.getInitialLimit();
+	}
+
+	synchronized boolean tryAcquire() {
+		if (inFlight >= (int) limit) {
+			return false;
+		}
+		inFlight++;
+		return true;
+	}
+
+	synchronized void release(long rttNanos, boolean dropped) {
+		int inFlightBefore = inFlight--;
+		if (dropped) {
+			limit = clamp(limit * BACKOFF_RATIO);
+			return;
+		}
+		longRtt = longRtt == 0 ? rttNanos : longRtt + (rttNanos - longRtt) / LONG_RTT_WINDOW;
+		double gradient = Math.max(0.5, Math.min(1.0, config.getTolerance() * longRtt / Math.max(rttNanos, 1)));
+		double newLimit = limit * gradient + Math.sqrt(limit);
+		if (newLimit > limit && inFlightBefore < limit / 2) {
+			// the route is not using its limit: latency says nothing about more load
+			return;
+		}
+		limit = clamp(limit * (1 - config.getSmoothing()) + newLimit * config.getSmoothing());
+	}
+
+	synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	private double clamp(double value) {
+		return Math.max(config.getMinLimit(), Math.min(config.getMaxLimit(), value));
+	}
+
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Streaming heavy hitters of one kind of key. A count-min sketch estimates how often
+ * each key was seen, never below its true count, and the keys with the highest estimates
+ * are kept as candidates for the top-K. Counts are kept per tumbling window and reported
+ * over the last window length, the previous window being weighted by the share of it
+ * still within that length. Memory is bounded by the sketch dimensions and the number
+ * of candidates, and updates are lock-free.
+ */
+final class HeavyHitters {
+
+	private static final long MIN_SPAN_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	private final int depth;
+
+	private final int width;
+
+	private final int capacity;
+
+	private final long windowNanos;
+
+	private final LongSupplier clock;
+
+	private final AtomicReference<Windows> windows;
+
+	/**
+	 * @param capacity number of candidates kept, a few times the K of the top-K reported
+	 * so that keys just below it compete on their own counts
+	 */
+	HeavyHitters(int depth, int width, int capacity, Duration window, LongSupplier clock) {
+		this.depth = depth;
+		this.width = width;
+		this.capacity = capacity;
+		this.windowNanos = window.toNanos();
+		this.clock = clock;
+		this.windows = new AtomicReference<>(new Windows(new Window(clock.getAsLong()), null));
+	}
+
+	void record(String key) {
+		Window window = windows(clock.getAsLong()).current;
+		window.offer(key, window.add(ConsistentHashRing.hash(key)));
+	}
+
+	/**
+	 * The {@code k} keys seen most over the last window length, with their rates.
+	 */
+	List<HotKeyTracker.HotKey> top(int k) {
+		long now = clock.getAsLong();
+		Windows current = windows(now);
+		double previousWeight = previousWeight(current, now);
+		Set<String> keys = new HashSet<>(current.current.candidates.keySet());
+		if (current.previous != null) {
+			keys.addAll(current.previous.candidates.keySet());
+		}
+		double spanSeconds = span(current, now) / (double) TimeUnit.SECONDS.toNanos(1);
+		return keys.stream().map(key -> {
+			long hash = ConsistentHashRing.hash(key);
+			double count = current.current.estimate(hash)
+					+ (current.previous != null ? previousWeight * current.previous.estimate(hash) : 0);
+			return new HotKeyTracker.HotKey(key, Math.round(count), count / spanSeconds);
+		}).sorted(Comparator.comparingLong(HotKeyTracker.HotKey::getCount).reversed()).limit(k)
+				.collect(Collectors.toList());
+	}
+
+	/**
+	 * Keys seen per second over the last window length, hot or not.
+	 */
+	double rate() {
+		long now = clock.getAsLong();
+		Windows current = windows(now);
+		double total = current.current.total.sum()
+				+ (current.previous != null ? previousWeight(current, now) * current.previous.total.sum() : 0);
+		return total * TimeUnit.SECONDS.toNanos(1) / span(current, now);
+	}
+
+	private Windows windows(long now) {
+		Windows current = windows.get();
+		while (now - current.current.start >= windowNanos) {
+			Windows next = new Windows(new Window(now),
+					now - current.current.start < 2 * windowNanos ? current.current : null);
+			if (windows.compareAndSet(current, next)) {
+				return next;
+			}
+			current = windows.get();
+		}
+		return current;
+	}
+
+	private double previousWeight(Windows current, long now) {
+		return Math.max(0, 1 - (now - current.current.start) / (double) windowNanos);
+	}
+
+	private long span(Windows current, long now) {
+		return current.previous != null ? windowNanos : Math.max(now - current.current.start, MIN_SPAN_NANOS);
+	}
+
+	private static final class Windows {
+
+		private final Window current;
+
+		private final Window previous;
+
+		private Windows(Window current, Window previous) {
+			this.current = current;
+			this.previous = previous;
+		}
+
+	}
+
+	private final class Window {
+
+		private final long start;
+
+		private final AtomicLongArray counts = new AtomicLongArray(depth * width);
+
+		private final LongAdder total = new LongAdder();
+
+		private final ConcurrentMap<String, Long> candidates = new ConcurrentHashMap<>();
+
+		/**
+		 * Estimate a key needs to become a candidate once there are enough of them.
+		 */
+		private volatile long threshold;
+
+		private Window(long start) {
+			this.start = start;
+		}
+
+		private long add(long hash) {
+			total.increment();
+			long min = Long.MAX_VALUE;
+			for (int row = 0; row < depth; row++) {
+				min = Math.min(min, counts.incrementAndGet(index(hash, row)));
+			}
+			return min;
+		}
+
+		private long estimate(long hash) {
+			long min = Long.MAX_VALUE;
+			for (int row = 0; row < depth; row++) {
+				min = Math.min(min, counts.get(index(hash, row)));
+			}
+			return min;
+		}
+
+		/**
+		 * Row indexes derived from two halves of one hash, after Kirsch and Mitzenmacher.
+		 */
+		private int index(long hash, int row) {
+			int combined = (int) hash + row * (int) (hash >>> 32);
+			return row * width + (combined & Integer.MAX_VALUE) % width;
+		}
+
+		private void offer(String key, long estimate) {
+			if (estimate <= threshold && candidates.size() >= capacity && !candidates.containsKey(key)) {
+				return;
+			}
+			candidates.put(key, estimate);
+			while (candidates.size() > capacity) {
+				Map.Entry<String, Long> smallest = null;
+				for (Map.Entry<String, Long> candidate : candidates.entrySet()) {
+					if (smallest == null || candidate.getValue() < smallest.getValue()) {
+						smallest = candidate;
+					}
+				}
+				if (smallest != null && candidates.remove(smallest.getKey(), smallest.getValue())) {
+					threshold = smallest.getValue();
+				}
+			}
+		}
+
+	}
+
+}
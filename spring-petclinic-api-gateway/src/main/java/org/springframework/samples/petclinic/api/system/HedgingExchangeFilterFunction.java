@@ -0,0 +1,153 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * Hedges the GETs of the configured downstream services: when the first exchange has not
+ * answered after a fixed delay, or after the observed p95 of the service, the same
+ * request is sent again. Each attempt goes through the load balancer on its own, the hedge
+ * being marked with {@link #HEDGE_ATTRIBUTE} so that sticky services do not send it to
+ * the instance owning its key; it is thus normally served by another instance. The first response wins and the other
+ * attempt is cancelled. Hedges are paid from a budget earned by regular requests, so a
+ * slow service never receives more than {@code budget-ratio} extra load.
+ */
+@Component
+public class HedgingExchangeFilterFunction implements ExchangeFilterFunction {
+
+	/**
+	 * Request attribute of the second attempt of a hedged request.
+	 */
+	public static final String HEDGE_ATTRIBUTE = HedgingExchangeFilterFunction.class.getName() + ".hedge";
+
+	private final ApiGatewayProperties.Hedging properties;
+
+	private final MeterRegistry registry;
+
+	private final ConcurrentMap<String, ServiceHedging> services = new ConcurrentHashMap<>();
+
+	public HedgingExchangeFilterFunction(ApiGatewayProperties properties, MeterRegistry registry) {
+		this.properties = properties.getHedging();
+		this.registry = registry;
+	}
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		String serviceId = request.url().getHost();
+		if (request.method() != HttpMethod.GET || !properties.getServices().contains(serviceId)) {
+			return next.exchange(request);
+		}
+		ServiceHedging service = services.computeIfAbsent(serviceId, ServiceHedging::new);
+		return Mono.defer(() -> {
+			service.earn();
+			AtomicBoolean answered = new AtomicBoolean();
+			Mono<ClientResponse> primary = attempt(request, next, service, answered, false);
+			Mono<ClientResponse> hedge = Mono.delay(service.delay()).flatMap(tick -> {
+				if (!service.spend()) {
+					return Mono.never();
+				}
+				service.sent.increment();
+				// a failed hedge must not hide the answer of the primary exchange
+				return attempt(request, next, service, answered, true).onErrorResume(ex -> Mono.never());
+			});
+			return Mono.firstWithSignal(primary, hedge);
+		});
+	}
+
+	private Mono<ClientResponse> attempt(ClientRequest request, ExchangeFunction next, ServiceHedging service,
+			AtomicBoolean answered, boolean hedge) {
+		return Mono.defer(() -> {
+			Timer.Sample sample = Timer.start(registry);
+			ClientRequest sent = hedge ? ClientRequest.from(request).attribute(HEDGE_ATTRIBUTE, true).build() : request;
+			return next.exchange(sent).flatMap(response -> {
+				sample.stop(service.latency);
+				if (!answered.compareAndSet(false, true)) {
+					// lost a photo finish: free the connection and let the winner's signal through
+					return response.releaseBody().then(Mono.never());
+				}
+				if (hedge) {
+					service.won.increment();
+				}
+				return Mono.just(response);
+			});
+		});
+	}
+
+	private final class ServiceHedging {
+
+		private static final long TOKEN = 1000;
+
+		private final Timer latency;
+
+		private final Counter sent;
+
+		private final Counter won;
+
+		private final AtomicLong budget = new AtomicLong();
+
+		private ServiceHedging(String serviceId) {
+			this.latency = Timer.builder("petclinic.gateway.hedging.latency").tag("service", serviceId)
+					.publishPercentiles(0.95).distributionStatisticExpiry(Duration.ofMinutes(1))
+					.register(registry);
+			this.sent = Counter.builder("petclinic.gateway.hedges").tag("service", serviceId).tag("result", "sent")
+					.register(registry);
+			this.won = Counter.builder("petclinic.gateway.hedges").tag("service", serviceId).tag("result", "won")
+					.register(registry);
+			this.budget.set(properties.getMaxBudget() * TOKEN);
+		}
+
+		private Duration delay() {
+			if (!properties.isAdaptive() || latency.count() < properties.getMinSamples()) {
+				return properties.getDelay();
+			}
+			for (ValueAtPercentile percentile : latency.takeSnapshot().percentileValues()) {
+				long p95 = (long) percentile.value(TimeUnit.MILLISECONDS);
+				return Duration.ofMillis(Math.max(p95, properties.getMinDelay().toMillis()));
+			}
+			return properties.getDelay();
+		}
+
+		private void earn() {
+			long earned = (long) (properties.getBudgetRatio() * TOKEN);
+			long max = properties.getMaxBudget() * TOKEN;
+			budget.getAndUpdate(tokens -> Math.min(max, tokens + earned));
+		}
+
+		private boolean spend() {
+			return budget.getAndUpdate(tokens -> tokens >= TOKEN ? tokens - TOKEN : tokens) >= TOKEN;
+		}
+
+	}
+
+}
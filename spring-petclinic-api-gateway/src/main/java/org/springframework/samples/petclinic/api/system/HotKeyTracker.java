@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link HeavyHitters} of each kind of key configured under {@code api-gateway.hot-keys},
+ * such as owner and pet ids. For each kind, the rate of the hot key at every rank of the
+ * top-K is published as {@code petclinic.gateway.hotkeys.rate} and the share of the
+ * traffic they take together as {@code petclinic.gateway.hotkeys.share}; the keys
+ * themselves are only listed by the {@link HotKeysEndpoint}, to keep tags bounded.
+ */
+@Component
+public class HotKeyTracker {
+
+	private final int topK;
+
+	private final Map<String, HeavyHitters> trackers = new LinkedHashMap<>();
+
+	public HotKeyTracker(ApiGatewayProperties properties, MeterRegistry registry) {
+		ApiGatewayProperties.HotKeys hotKeys = properties.getHotKeys();
+		this.topK = hotKeys.getTopK();
+		for (String type : hotKeys.getKeys().keySet()) {
+			HeavyHitters tracker = new HeavyHitters(hotKeys.getDepth(), hotKeys.getWidth(), 2 * topK,
+					hotKeys.getWindow(), System::nanoTime);
+			trackers.put(type, tracker);
+			for (int rank = 1; rank <= topK; rank++) {
+				int index = rank - 1;
+				Gauge.builder("petclinic.gateway.hotkeys.rate", tracker, t -> rate(t.top(topK), index))
+						.tag("type", type).tag("rank", String.valueOf(rank)).baseUnit("requests/s")
+						.register(registry);
+			}
+			Gauge.builder("petclinic.gateway.hotkeys.share", tracker, this::share).tag("type", type)
+					.register(registry);
+		}
+	}
+
+	/**
+	 * Counts one request for the key; kinds of key that are not configured are ignored.
+	 */
+	public void record(String type, String key) {
+		HeavyHitters tracker = trackers.get(type);
+		if (tracker != null) {
+			tracker.record(key);
+		}
+	}
+
+	public Map<String, List<HotKey>> top() {
+		Map<String, List<HotKey>> top = new LinkedHashMap<>();
+		trackers.forEach((type, tracker) -> top.put(type, tracker.top(topK)));
+		return top;
+	}
+
+	public List<HotKey> top(String type) {
+		HeavyHitters tracker = trackers.get(type);
+		return tracker != null ? tracker.top(topK) : Collections.emptyList();
+	}
+
+	private static double rate(List<HotKey> top, int index) {
+		return index < top.size() ? top.get(index).getRate() : 0;
+	}
+
+	private double share(HeavyHitters tracker) {
+		double total = tracker.rate();
+		return total > 0 ? tracker.top(topK).stream().mapToDouble(HotKey::getRate).sum() / total : 0;
+	}
+
+	@Value
+	public static class HotKey {
+
+		String key;
+
+		/**
+		 * Estimated requests over the last window, possibly overestimated by the sketch.
+		 */
+		long count;
+
+		/**
+		 * Estimated requests per second.
+		 */
+		double rate;
+
+	}
+
+}
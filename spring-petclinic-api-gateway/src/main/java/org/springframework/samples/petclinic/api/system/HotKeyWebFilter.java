@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.core.Ordered;
+import org.springframework.http.server.PathContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+import reactor.core.publisher.Mono;
+
+/**
+ * Feeds the {@link HotKeyTracker} with the keys of every request reaching the gateway,
+ * routes and aggregation endpoints alike: the URI variable of the first matching path
+ * pattern of each kind of key, and every value of its query parameter, comma separated
+ * lists included.
+ */
+@Component
+public class HotKeyWebFilter implements WebFilter, Ordered {
+
+	private final HotKeyTracker hotKeyTracker;
+
+	private final boolean enabled;
+
+	private final List<KeySource> sources = new ArrayList<>();
+
+	public HotKeyWebFilter(HotKeyTracker hotKeyTracker, ApiGatewayProperties properties) {
+		this.hotKeyTracker = hotKeyTracker;
+		this.enabled = properties.getHotKeys().isEnabled();
+		properties.getHotKeys().getKeys().forEach((type, source) -> sources.add(new KeySource(type, source)));
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (enabled && !WarmupWebFilter.isWarmup(exchange)) {
+			PathContainer path = exchange.getRequest().getPath().pathWithinApplication();
+			sources.forEach(source -> source.record(path, exchange));
+		}
+		return chain.filter(exchange);
+	}
+
+	@Override
+	public int getOrder() {
+		return Ordered.HIGHEST_PRECEDENCE + 30;
+	}
+
+	private final class KeySource {
+
+		private final String type;
+
+		private final List<PathPattern> paths;
+
+		private final String parameter;
+
+		private KeySource(String type, ApiGatewayProperties.KeySource properties) {
+			this.type = type;
+			this.paths = properties.getPaths().stream().map(PathPatternParser.defaultInstance::parse)
+					.collect(Collectors.toList());
+			this.parameter = properties.getParameter();
+		}
+
+		private void record(PathContainer path, ServerWebExchange exchange) {
+			for (PathPattern pattern : paths) {
+				PathPattern.PathMatchInfo match = pattern.matchAndExtract(path);
+				if (match != null && !match.getUriVariables().isEmpty()) {
+					hotKeyTracker.record(type, match.getUriVariables().values().iterator().next());
+					break;
+				}
+			}
+			if (parameter != null) {
+				List<String> values = exchange.getRequest().getQueryParams().get(parameter);
+				if (values != null) {
+					for (String value : values) {
+						for (String key : StringUtils.commaDelimitedListToStringArray(value)) {
+							if (StringUtils.hasText(key)) {
+								hotKeyTracker.record(type, key.trim());
+							}
+						}
+					}
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.Tags;
+import org.springframework.cloud.gateway.support.tagsprovider.GatewayTagsProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.URI;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * Adds the downstream instance chosen by the load balancer to the {@code gateway.requests}
+ * timer. Requests answered by the gateway itself, e.g. collapsed or rejected ones, are
+ * tagged {@code none}.
+ */
+@Component
+public class InstanceGatewayTagsProvider implements GatewayTagsProvider {
+
+	@Override
+	public Tags apply(ServerWebExchange exchange) {
+		URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+		boolean resolved = url != null && url.getHost() != null && !"lb".equals(url.getScheme());
+		return Tags.of("instance", resolved ? url.getHost() + ":" + url.getPort() : "none");
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Passive health and load of the downstream instances, keyed by {@code host:port}, as
+ * observed by the aggregation clients and the gateway routes: requests in flight, a
+ * peak sensitive moving average of latency and outlier ejection. An instance is ejected
+ * for {@code ejection-time} after too many consecutive failures, or when its average
+ * latency exceeds {@code slow-threshold}.
+ */
+@Component
+public class InstanceStatistics {
+
+	private final ApiGatewayProperties.LoadBalancing properties;
+
+	private final ConcurrentMap<String, Instance> instances = new ConcurrentHashMap<>();
+
+	public InstanceStatistics(ApiGatewayProperties properties) {
+		this.properties = properties.getLoadBalancing();
+	}
+
+	public static String key(String host, int port) {
+		return host + ":" + port;
+	}
+
+	public void start(String instance) {
+		instances.computeIfAbsent(instance, it -> new Instance()).start();
+	}
+
+	public void complete(String instance, long latencyNanos, boolean failed) {
+		instances.computeIfAbsent(instance, it -> new Instance()).complete(latencyNanos, failed, System.nanoTime());
+	}
+
+	/**
+	 * Expected cost of sending one more request: average latency times the requests
+	 * that would then be in flight. Unknown instances cost nothing, so they get probed.
+	 */
+	public double cost(String instance) {
+		Instance stats = instances.get(instance);
+		return stats == null ? 0 : stats.cost(System.nanoTime());
+	}
+
+	public int inFlight(String instance) {
+		Instance stats = instances.get(instance);
+		return stats == null ? 0 : stats.inFlight();
+	}
+
+	public boolean isEjected(String instance) {
+		Instance stats = instances.get(instance);
+		return stats != null && stats.isEjected(System.nanoTime());
+	}
+
+	private final class Instance {
+
+		/**
+		 * Samples needed before an instance can be ejected as slow.
+		 */
+		private static final int MIN_SAMPLES = 10;
+
+		private int inFlight;
+
+		private double peakEwma;
+
+		private double ewma;
+
+		private int samples;
+
+		private long lastUpdate;
+
+		private int consecutiveFailures;
+
+		private boolean ejected;
+
+		private long ejectedUntil;
+
+		synchronized void start() {
+			inFlight++;
+		}
+
+		synchronized void complete(long latencyNanos, boolean failed, long now) {
+			inFlight = Math.max(0, inFlight - 1);
+			consecutiveFailures = failed ? consecutiveFailures + 1 : 0;
+			double weight = samples == 0 ? 0 : decay(now);
+			ewma = ewma * weight + latencyNanos * (1 - weight);
+			// peak EWMA: react to a slowdown at once, forget it gradually
+			peakEwma = Math.max(latencyNanos, peakEwma * weight + latencyNanos * (1 - weight));
+			samples++;
+			lastUpdate = now;
+			if (consecutiveFailures >= properties.getMaxConsecutiveFailures()
+					|| (samples >= MIN_SAMPLES && ewma > properties.getSlowThreshold().toNanos())) {
+				ejected = true;
+				ejectedUntil = now + properties.getEjectionTime().toNanos();
+				// back in rotation with a clean slate once the ejection is over
+				consecutiveFailures = 0;
+				samples = 0;
+				ewma = 0;
+				peakEwma = 0;
+			}
+		}
+
+		synchronized double cost(long now) {
+			// the extra nanosecond lets requests in flight break ties between idle instances
+			return (peakEwma * decay(now) + 1) * (inFlight + 1);
+		}
+
+		synchronized int inFlight() {
+			return inFlight;
+		}
+
+		synchronized boolean isEjected(long now) {
+			if (ejected && now - ejectedUntil >= 0) {
+				ejected = false;
+			}
+			return ejected;
+		}
+
+		private double decay(long now) {
+			return Math.exp(-(now - lastUpdate) / (double) properties.getDecay().toNanos());
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.filter.ReactiveLoadBalancerClientFilter;
+import org.springframework.core.Ordered;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.net.URI;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_REQUEST_URL_ATTR;
+
+/**
+ * Feeds {@link InstanceStatistics} with the outcome of the requests routed through
+ * {@code lb://} routes, right after the load balancer has chosen their instance.
+ */
+@Component
+@RequiredArgsConstructor
+public class InstanceStatisticsGlobalFilter implements GlobalFilter, Ordered {
+
+	private final InstanceStatistics statistics;
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+		URI url = exchange.getAttribute(GATEWAY_REQUEST_URL_ATTR);
+		if (url == null || url.getHost() == null || "lb".equals(url.getScheme())) {
+			return chain.filter(exchange);
+		}
+		String instance = InstanceStatistics.key(url.getHost(), url.getPort());
+		long start = System.nanoTime();
+		statistics.start(instance);
+		return chain.filter(exchange).doFinally(signal -> {
+			HttpStatus status = exchange.getResponse().getStatusCode();
+			boolean failed = signal == SignalType.ON_ERROR || (status != null && status.is5xxServerError());
+			statistics.complete(instance, System.nanoTime() - start, failed);
+		});
+	}
+
+	@Override
+	public int getOrder() {
+		return ReactiveLoadBalancerClientFilter.LOAD_BALANCER_CLIENT_FILTER_ORDER + 1;
+	}
+
+}
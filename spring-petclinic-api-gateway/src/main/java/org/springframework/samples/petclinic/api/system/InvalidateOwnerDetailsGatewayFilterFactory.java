@@ -0,0 +1,89 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import org.springframework.stereotype.Component;
+
+import java.util.OptionalInt;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Route filter dropping the cached owner details touched by a write request: the owner
+ * and/or pet are read from the {@code /owners/{ownerId}} and {@code /pets/{petId}} path
+ * segments. Invalidation happens both before the request is proxied and once it
+ * completes, so a concurrent read cannot cache the state from before the write.
+ *
+ * <pre>
+ * filters:
+ *   - InvalidateOwnerDetails
+ * </pre>
+ */
+@Component
+public class InvalidateOwnerDetailsGatewayFilterFactory extends AbstractGatewayFilterFactory<Object> {
+
+	private static final Pattern OWNER_ID = Pattern.compile("/owners/(\\d+)");
+
+	private static final Pattern PET_ID = Pattern.compile("/pets/(\\d+)");
+
+	private final OwnerDetailsCache ownerDetailsCache;
+
+	public InvalidateOwnerDetailsGatewayFilterFactory(OwnerDetailsCache ownerDetailsCache) {
+		super(Object.class);
+		this.ownerDetailsCache = ownerDetailsCache;
+	}
+
+	@Override
+	public GatewayFilter apply(Object config) {
+		return (exchange, chain) -> {
+			HttpMethod method = exchange.getRequest().getMethod();
+			if (method == null || method == HttpMethod.GET || method == HttpMethod.HEAD
+					|| method == HttpMethod.OPTIONS) {
+				return chain.filter(exchange);
+			}
+			String path = exchange.getRequest().getPath().value();
+			invalidate(path);
+			return chain.filter(exchange).doFinally(signal -> invalidate(path));
+		};
+	}
+
+	private void invalidate(String path) {
+		id(OWNER_ID, path).ifPresent(ownerDetailsCache::invalidateOwner);
+		id(PET_ID, path).ifPresent(ownerDetailsCache::invalidatePet);
+	}
+
+	/**
+	 * Id matched in the path, none when out of the int range: nothing can be cached for
+	 * it, and the service answers such a request with an error of its own.
+	 */
+	private static OptionalInt id(Pattern pattern, String path) {
+		Matcher matcher = pattern.matcher(path);
+		if (!matcher.find()) {
+			return OptionalInt.empty();
+		}
+		try {
+			return OptionalInt.of(Integer.parseInt(matcher.group(1)));
+		}
+		catch (NumberFormatException ex) {
+			return OptionalInt.empty();
+		}
+	}
+
+}
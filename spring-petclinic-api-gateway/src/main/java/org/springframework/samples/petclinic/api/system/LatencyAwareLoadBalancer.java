@@ -0,0 +1,178 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.RequestData;
+import org.springframework.cloud.client.loadbalancer.RequestDataContext;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Power of two choices load balancer: picks two random instances that are not ejected
+ * and sends the request to the one with the lower {@link InstanceStatistics#cost(String)},
+ * i.e. peak EWMA latency times requests in flight. When every instance is ejected the
+ * ejections are ignored rather than failing the request.
+ * <p>
+ * Services configured as sticky are routed by consistent hashing of a request key
+ * instead, so that each instance keeps serving the same owners and its caches stay warm.
+ * Loads are bounded: an instance with more than {@code load-factor} times the average
+ * requests in flight passes its keys on to the next instance of the ring. Requests
+ * without a key still use the power of two choices. The hedge of a request (see
+ * {@link HedgingExchangeFilterFunction}) skips the instance owning its key, which is the
+ * one likely to be slow on it, and goes to the next instance of the ring instead.
+ */
+public class LatencyAwareLoadBalancer implements ReactorServiceInstanceLoadBalancer {
+
+	private final ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider;
+
+	private final InstanceStatistics statistics;
+
+	private final ApiGatewayProperties.Sticky sticky;
+
+	private final StickyKeyResolver keyResolver;
+
+	private volatile ConsistentHashRing ring;
+
+	/**
+	 * @param sticky consistent hashing settings of the service, {@code null} if it is not
+	 * sticky
+	 */
+	public LatencyAwareLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> serviceInstanceListSupplierProvider,
+			InstanceStatistics statistics, ApiGatewayProperties.Sticky sticky) {
+		this.serviceInstanceListSupplierProvider = serviceInstanceListSupplierProvider;
+		this.statistics = statistics;
+		this.sticky = sticky;
+		this.keyResolver = sticky == null ? null : new StickyKeyResolver(sticky);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Mono<Response<ServiceInstance>> choose(Request request) {
+		ServiceInstanceListSupplier supplier = serviceInstanceListSupplierProvider
+				.getIfAvailable(NoopServiceInstanceListSupplier::new);
+		String key = stickyKey(request);
+		boolean hedge = isHedge(request);
+		return supplier.get(request).next().map(instances -> choose(instances, key, hedge));
+	}
+
+	Response<ServiceInstance> choose(List<ServiceInstance> instances, String key, boolean hedge) {
+		if (instances.isEmpty()) {
+			return new EmptyResponse();
+		}
+		List<ServiceInstance> candidates = instances.stream()
+				.filter(instance -> !statistics.isEjected(key(instance))).collect(Collectors.toList());
+		if (candidates.isEmpty()) {
+			candidates = instances;
+		}
+		if (candidates.size() == 1) {
+			return new DefaultResponse(candidates.get(0));
+		}
+		if (key != null) {
+			Map<String, ServiceInstance> byKey = candidates.stream()
+					.collect(Collectors.toMap(LatencyAwareLoadBalancer::key, Function.identity(), (a, b) -> a));
+			ConsistentHashRing current = ring(byKey.keySet());
+			String owner = hedge ? current.select(key, byKey::containsKey) : null;
+			ServiceInstance instance = chooseByHash(current, byKey, key, owner);
+			if (instance != null) {
+				return new DefaultResponse(instance);
+			}
+			if (owner != null) {
+				candidates = candidates.stream().filter(candidate -> !owner.equals(key(candidate)))
+						.collect(Collectors.toList());
+				if (candidates.size() == 1) {
+					return new DefaultResponse(candidates.get(0));
+				}
+			}
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int first = random.nextInt(candidates.size());
+		int second = random.nextInt(candidates.size() - 1);
+		if (second >= first) {
+			second++;
+		}
+		ServiceInstance a = candidates.get(first);
+		ServiceInstance b = candidates.get(second);
+		return new DefaultResponse(statistics.cost(key(a)) <= statistics.cost(key(b)) ? a : b);
+	}
+
+	/**
+	 * @param skipped instance not to choose, {@code null} if any will do
+	 */
+	private ServiceInstance chooseByHash(ConsistentHashRing current, Map<String, ServiceInstance> byKey, String key,
+			String skipped) {
+		int total = 0;
+		for (String instance : byKey.keySet()) {
+			total += statistics.inFlight(instance);
+		}
+		// bounded loads: nobody takes more than its share of the requests, this one included
+		double bound = Math.ceil(sticky.getLoadFactor() * (total + 1) / byKey.size());
+		String chosen = current.select(key, instance -> byKey.containsKey(instance) && !instance.equals(skipped)
+				&& statistics.inFlight(instance) + 1 <= bound);
+		return chosen == null ? null : byKey.get(chosen);
+	}
+
+	/**
+	 * The ring is only rebuilt when the instances change, ejections excluded, so that keys
+	 * go back to their instance once it has recovered.
+	 */
+	private ConsistentHashRing ring(Set<String> candidates) {
+		ConsistentHashRing current = ring;
+		if (current == null || !current.getNodes().containsAll(candidates)) {
+			current = new ConsistentHashRing(candidates, sticky.getVirtualNodes());
+			ring = current;
+		}
+		return current;
+	}
+
+	@SuppressWarnings("rawtypes")
+	private String stickyKey(Request request) {
+		if (keyResolver == null || !(request.getContext() instanceof RequestDataContext)) {
+			return null;
+		}
+		RequestData data = ((RequestDataContext) request.getContext()).getClientRequest();
+		return data == null || data.getUrl() == null ? null : keyResolver.resolve(data.getUrl(), data.getHeaders());
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static boolean isHedge(Request request) {
+		if (!(request.getContext() instanceof RequestDataContext)) {
+			return false;
+		}
+		RequestData data = ((RequestDataContext) request.getContext()).getClientRequest();
+		return data != null && data.getAttributes() != null
+				&& Boolean.TRUE.equals(data.getAttributes().get(HedgingExchangeFilterFunction.HEDGE_ATTRIBUTE));
+	}
+
+	private static String key(ServiceInstance instance) {
+		return InstanceStatistics.key(instance.getHost(), instance.getPort());
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.loadbalancer.core.ReactorLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+/**
+ * Load balancer of every downstream service, instantiated in the per-service load
+ * balancer contexts. Deliberately not a {@code @Configuration} so that it is not picked
+ * up by component scanning.
+ */
+public class LatencyAwareLoadBalancerConfiguration {
+
+	@Bean
+	ReactorLoadBalancer<ServiceInstance> latencyAwareLoadBalancer(Environment environment,
+			LoadBalancerClientFactory loadBalancerClientFactory, InstanceStatistics statistics,
+			ApiGatewayProperties properties) {
+		String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+		return new LatencyAwareLoadBalancer(
+				loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class), statistics,
+				properties.getLoadBalancing().getSticky().get(serviceId));
+	}
+
+}
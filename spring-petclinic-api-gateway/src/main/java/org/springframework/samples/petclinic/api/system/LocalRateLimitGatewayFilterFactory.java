@@ -0,0 +1,195 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Data;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.cloud.gateway.support.ipresolver.XForwardedRemoteAddressResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * In-memory alternative to the Redis backed {@code RequestRateLimiter}: each key gets a
+ * lock-free {@link TokenBucket}. Buckets live in a size bounded cache and are dropped
+ * once idle, so memory stays bounded whatever the number of clients. The key is the
+ * client IP, the client IP forwarded by trusted proxies, a request header or a URI
+ * template variable of the route's Path predicate. Behind a reverse proxy the IP key
+ * puts every client in the proxy's bucket, use FORWARDED instead. Throttled requests get
+ * a 429 with a Retry-After header.
+ *
+ * <pre>
+ * filters:
+ *   - name: LocalRateLimit
+ *     args:
+ *       replenishRate: 50
+ *       burstCapacity: 100
+ *       keyType: PATH
+ *       keyName: ownerId
+ * </pre>
+ */
+@Component
+public class LocalRateLimitGatewayFilterFactory
+		extends AbstractGatewayFilterFactory<LocalRateLimitGatewayFilterFactory.Config> {
+
+	private final MeterRegistry registry;
+
+	private final ConcurrentMap<String, Counter> counters = new ConcurrentHashMap<>();
+
+	public LocalRateLimitGatewayFilterFactory(MeterRegistry registry) {
+		super(Config.class);
+		this.registry = registry;
+	}
+
+	@Override
+	public GatewayFilter apply(Config config) {
+		if (config.getKeyType().requiresKeyName() && !StringUtils.hasText(config.getKeyName())) {
+			// every request would resolve to the same key, all clients sharing one bucket
+			throw new IllegalArgumentException("LocalRateLimit keyType " + config.getKeyType() + " requires a keyName");
+		}
+		Cache<String, TokenBucket> buckets = Caffeine.newBuilder().maximumSize(config.getMaxKeys())
+				.expireAfterAccess(config.getIdleTimeout()).build();
+		return (exchange, chain) -> {
+			if (WarmupWebFilter.isWarmup(exchange)) {
+				return chain.filter(exchange);
+			}
+			TokenBucket bucket = buckets.get(config.getKeyType().resolve(exchange, config),
+					key -> new TokenBucket(config.getReplenishRate(), config.getBurstCapacity()));
+			long wait = bucket.tryConsume(System.nanoTime());
+			Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+			String routeId = route != null ? route.getId() : "unknown";
+			if (wait == 0) {
+				counter(routeId, "allowed").increment();
+				return chain.filter(exchange);
+			}
+			counter(routeId, "throttled").increment();
+			exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+			exchange.getResponse().getHeaders().set(HttpHeaders.RETRY_AFTER,
+					String.valueOf(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999))));
+			return exchange.getResponse().setComplete();
+		};
+	}
+
+	private Counter counter(String routeId, String result) {
+		return counters.computeIfAbsent(routeId + "|" + result, key -> Counter
+				.builder("petclinic.gateway.ratelimit.requests").tag("route", routeId).tag("result", result)
+				.register(registry));
+	}
+
+	public enum KeyType {
+
+		IP {
+			@Override
+			String resolve(ServerWebExchange exchange, Config config) {
+				return hostAddress(exchange.getRequest().getRemoteAddress());
+			}
+		},
+
+		/**
+		 * Client IP as seen by the outermost of {@code trustedProxies} proxies appending
+		 * to X-Forwarded-For; the remote address when the header is missing.
+		 */
+		FORWARDED {
+			@Override
+			String resolve(ServerWebExchange exchange, Config config) {
+				return hostAddress(
+						XForwardedRemoteAddressResolver.maxTrustedIndex(config.getTrustedProxies()).resolve(exchange));
+			}
+		},
+
+		HEADER {
+			@Override
+			String resolve(ServerWebExchange exchange, Config config) {
+				String value = exchange.getRequest().getHeaders().getFirst(config.getKeyName());
+				return value != null ? value : "";
+			}
+		},
+
+		PATH {
+			@Override
+			String resolve(ServerWebExchange exchange, Config config) {
+				return ServerWebExchangeUtils.getUriTemplateVariables(exchange).getOrDefault(config.getKeyName(), "");
+			}
+		};
+
+		boolean requiresKeyName() {
+			return this == HEADER || this == PATH;
+		}
+
+		/**
+		 * Requests without a key share one bucket.
+		 */
+		abstract String resolve(ServerWebExchange exchange, Config config);
+
+		private static String hostAddress(InetSocketAddress address) {
+			if (address == null) {
+				return "";
+			}
+			// forwarded addresses are left unresolved
+			return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+		}
+
+	}
+
+	@Data
+	public static class Config {
+
+		/**
+		 * Tokens added to a bucket per second.
+		 */
+		private double replenishRate = 10;
+
+		/**
+		 * Requests a bucket allows in a burst.
+		 */
+		private int burstCapacity = 20;
+
+		private KeyType keyType = KeyType.IP;
+
+		/**
+		 * Header or URI template variable name, required by the HEADER and PATH key types.
+		 */
+		private String keyName;
+
+		/**
+		 * Reverse proxies in front of the gateway, for the FORWARDED key type.
+		 */
+		private int trustedProxies = 1;
+
+		private long maxKeys = 10_000;
+
+		private Duration idleTimeout = Duration.ofMinutes(5);
+
+	}
+
+}
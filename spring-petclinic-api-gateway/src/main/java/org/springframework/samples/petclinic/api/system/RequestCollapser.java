@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+/**
+ * Single-flight registry: concurrent calls with the same key share one in-flight
+ * {@link Mono}. The entry is dropped as soon as the call terminates, so nothing is cached
+ * beyond the lifetime of the call itself.
+ */
+@Component
+@RequiredArgsConstructor
+public class RequestCollapser {
+
+	private final ConcurrentMap<String, InFlight<?>> inFlight = new ConcurrentHashMap<>();
+
+	private final MeterRegistry registry;
+
+	/**
+	 * @param name the downstream or route name used to tag the metrics
+	 * @param key identifies identical calls, typically method and URI
+	 * @param call supplies the (lazy) call, assembled once per invocation
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Mono<T> collapse(String name, String key, Supplier<Mono<T>> call) {
+		return Mono.defer(() -> {
+			InFlight<T> candidate = new InFlight<>();
+			candidate.mono = call.get().doFinally(signal -> inFlight.remove(key, candidate)).cache();
+			InFlight<?> existing = inFlight.putIfAbsent(key, candidate);
+			if (existing != null) {
+				counter(name, "collapsed").increment();
+				return (Mono<T>) existing.mono;
+			}
+			counter(name, "leader").increment();
+			return candidate.mono;
+		});
+	}
+
+	private Counter counter(String name, String role) {
+		return Counter.builder("petclinic.gateway.collapsing").tag("name", name).tag("role", role)
+				.description("Idempotent requests sent downstream (leader) or served by an identical in-flight one")
+				.register(registry);
+	}
+
+	private static final class InFlight<T> {
+
+		private Mono<T> mono;
+
+	}
+
+}
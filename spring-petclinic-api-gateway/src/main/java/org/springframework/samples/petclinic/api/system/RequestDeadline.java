@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.web.server.ServerWebExchange;
+
+import java.time.Duration;
+
+/**
+ * Point in time after which nobody waits for the response of a request anymore. It is
+ * forwarded downstream as the remaining budget in milliseconds, in the
+ * {@value #HEADER} header, rather than as an instant so that clock skew between hosts
+ * does not matter.
+ */
+public final class RequestDeadline {
+
+	public static final String HEADER = "X-Request-Timeout";
+
+	static final String ATTRIBUTE = RequestDeadline.class.getName();
+
+	private final long nanos;
+
+	private RequestDeadline(long nanos) {
+		this.nanos = nanos;
+	}
+
+	public static RequestDeadline after(Duration timeout) {
+		return new RequestDeadline(System.nanoTime() + timeout.toNanos());
+	}
+
+	/**
+	 * The deadline of the request being handled, if any.
+	 */
+	public static RequestDeadline of(ServerWebExchange exchange) {
+		return exchange.getAttribute(ATTRIBUTE);
+	}
+
+	public Duration remaining() {
+		return Duration.ofNanos(nanos - System.nanoTime());
+	}
+
+	public boolean isExpired() {
+		return nanos - System.nanoTime() <= 0;
+	}
+
+	public RequestDeadline min(RequestDeadline other) {
+		return other == null || nanos - other.nanos <= 0 ? this : other;
+	}
+
+	/**
+	 * Header value of the remaining budget, rounded up so that it is never 0 before the
+	 * deadline has actually passed.
+	 */
+	public String toHeaderValue() {
+		return String.valueOf((Math.max(0, nanos - System.nanoTime()) + 999_999) / 1_000_000);
+	}
+
+	static RequestDeadline fromHeaderValue(String value) {
+		try {
+			return value == null ? null : after(Duration.ofMillis(Long.parseLong(value.trim())));
+		}
+		catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+
+/**
+ * Retry budget of each downstream service, shared by its routes and its aggregation
+ * client. Every successful request earns {@code budget-ratio} of a retry and every retry
+ * spends a whole one, so retries can never add more than that ratio of load, however
+ * badly the service fails. Spent and denied retries are counted as
+ * {@code petclinic.gateway.retries}.
+ */
+@Component
+public class RetryBudgets {
+
+	private static final long TOKEN = 1000;
+
+	private final ApiGatewayProperties.Retry properties;
+
+	private final MeterRegistry registry;
+
+	private final ConcurrentMap<String, Budget> budgets = new ConcurrentHashMap<>();
+
+	public RetryBudgets(ApiGatewayProperties properties, MeterRegistry registry) {
+		this.properties = properties.getRetry();
+		this.registry = registry;
+	}
+
+	public boolean isRetryable(HttpMethod method) {
+		return properties.getMaxRetries() > 0 && properties.getMethods().contains(method);
+	}
+
+	public boolean isRetryable(int status) {
+		return properties.getStatuses().contains(status);
+	}
+
+	/**
+	 * Records a successful attempt, which earns part of a retry.
+	 */
+	public void succeeded(String serviceId) {
+		budget(serviceId).earn();
+	}
+
+	/**
+	 * Whether the retry after the given number of retries may be sent, paying it from the
+	 * budget if so.
+	 */
+	public boolean tryRetry(String serviceId, int retries) {
+		if (retries >= properties.getMaxRetries()) {
+			return false;
+		}
+		Budget budget = budget(serviceId);
+		if (budget.spend()) {
+			budget.spent.increment();
+			return true;
+		}
+		budget.denied.increment();
+		return false;
+	}
+
+	/**
+	 * Exponential backoff with equal jitter, so that retries of concurrent failures
+	 * do not arrive together.
+	 */
+	public Duration backoff(int retries) {
+		long max = Math.min(properties.getMaxBackoff().toNanos(),
+				properties.getFirstBackoff().toNanos() << Math.min(retries, 20));
+		return Duration.ofNanos(max / 2 + ThreadLocalRandom.current().nextLong(max / 2 + 1));
+	}
+
+	private Budget budget(String serviceId) {
+		return budgets.computeIfAbsent(serviceId, Budget::new);
+	}
+
+	private final class Budget {
+
+		private final AtomicLong tokens = new AtomicLong(properties.getMaxBudget() * TOKEN);
+
+		private final Counter spent;
+
+		private final Counter denied;
+
+		private Budget(String serviceId) {
+			this.spent = Counter.builder("petclinic.gateway.retries").tag("service", serviceId).tag("result", "spent")
+					.register(registry);
+			this.denied = Counter.builder("petclinic.gateway.retries").tag("service", serviceId)
+					.tag("result", "denied").register(registry);
+		}
+
+		private void earn() {
+			long earned = (long) (properties.getBudgetRatio() * TOKEN);
+			long max = properties.getMaxBudget() * TOKEN;
+			tokens.getAndUpdate(current -> Math.min(max, current + earned));
+		}
+
+		private boolean spend() {
+			return tokens.getAndUpdate(current -> current >= TOKEN ? current - TOKEN : current) >= TOKEN;
+		}
+
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.util.function.Function;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Mono;
+
+/**
+ * Retries the idempotent requests of the aggregation clients that could not connect or
+ * got a retryable status, within the {@link RetryBudgets retry budget} of the service.
+ * Each retry goes through the load balancer again, after a jittered backoff.
+ */
+@Component
+@RequiredArgsConstructor
+public class RetryingExchangeFilterFunction implements ExchangeFilterFunction {
+
+	private final RetryBudgets retryBudgets;
+
+	@Override
+	public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+		if (!retryBudgets.isRetryable(request.method())) {
+			return next.exchange(request);
+		}
+		return attempt(request, next, 0);
+	}
+
+	private Mono<ClientResponse> attempt(ClientRequest request, ExchangeFunction next, int retries) {
+		String serviceId = request.url().getHost();
+		// decide on the outcome of this attempt only, not on the ones of the retries
+		return next.exchange(request).map(response -> {
+			if (!retryBudgets.isRetryable(response.rawStatusCode())) {
+				retryBudgets.succeeded(serviceId);
+				return Mono.just(response);
+			}
+			if (!retryBudgets.tryRetry(serviceId, retries)) {
+				return Mono.just(response);
+			}
+			return response.releaseBody().then(retry(request, next, retries));
+		}).onErrorResume(WebClientRequestException.class,
+				ex -> Mono.just(retryBudgets.tryRetry(serviceId, retries) ? retry(request, next, retries)
+						: Mono.<ClientResponse>error(ex)))
+				.flatMap(Function.identity());
+	}
+
+	private Mono<ClientResponse> retry(ClientRequest request, ExchangeFunction next, int retries) {
+		return Mono.delay(retryBudgets.backoff(retries)).then(Mono.defer(() -> attempt(request, next, retries + 1)));
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * One {@link WebClient} per downstream service, built once from the load balanced
+ * builder, each on its own Reactor Netty connection pool. Pool gauges
+ * ({@code reactor.netty.connection.provider.*}, tagged by service name) and client
+ * timings ({@code reactor.netty.http.client.*}) are published to Micrometer, and every
+ * exchange is timed per instance by {@link TimedClientHttpConnector}. Responses are
+ * requested in the configured binary format, Smile by default, and gzip compressed.
+ */
+@Component
+public class ServiceWebClients implements DisposableBean {
+
+	private final WebClient.Builder webClientBuilder;
+
+	private final ApiGatewayProperties.HttpClients properties;
+
+	private final MeterRegistry registry;
+
+	private final InstanceStatistics statistics;
+
+	private final ConcurrentMap<String, WebClient> webClients = new ConcurrentHashMap<>();
+
+	private final List<ConnectionProvider> connectionProviders = new CopyOnWriteArrayList<>();
+
+	public ServiceWebClients(WebClient.Builder webClientBuilder, ApiGatewayProperties properties,
+			MeterRegistry registry, InstanceStatistics statistics) {
+		this.webClientBuilder = webClientBuilder;
+		this.properties = properties.getHttpClients();
+		this.registry = registry;
+		this.statistics = statistics;
+	}
+
+	public WebClient get(String serviceId) {
+		return webClients.computeIfAbsent(serviceId, id -> webClientBuilder.clone()
+				.defaultHeader(HttpHeaders.ACCEPT, properties.getFormat(), MediaType.APPLICATION_JSON_VALUE + ";q=0.9")
+				// Smile is decoded by the default codecs, CBOR needs registering
+				.codecs(codecs -> codecs.customCodecs().register(new Jackson2CborDecoder()))
+				.clientConnector(new TimedClientHttpConnector(new ReactorClientHttpConnector(httpClient(id)), id,
+						registry, statistics))
+				.build());
+	}
+
+	private HttpClient httpClient(String serviceId) {
+		ApiGatewayProperties.ConnectionPool pool = properties.forService(serviceId);
+		ConnectionProvider connectionProvider = ConnectionProvider.builder(serviceId)
+				.maxConnections(pool.getMaxConnections()).pendingAcquireMaxCount(pool.getMaxPendingAcquires())
+				.pendingAcquireTimeout(pool.getPendingAcquireTimeout()).maxIdleTime(pool.getMaxIdleTime())
+				.maxLifeTime(pool.getMaxLifeTime()).evictInBackground(pool.getEvictionInterval()).metrics(true)
+				.build();
+		connectionProviders.add(connectionProvider);
+		HttpClient httpClient = HttpClient.create(connectionProvider).keepAlive(pool.isKeepAlive())
+				.compress(properties.isCompression()).metrics(true, ServiceWebClients::uriTag);
+		if (pool.isHttp2()) {
+			httpClient = httpClient.protocol(HttpProtocol.H2C, HttpProtocol.HTTP11);
+		}
+		return httpClient;
+	}
+
+	/**
+	 * Keeps the uri tag cardinality bounded by hiding ids and query strings.
+	 */
+	static String uriTag(String uri) {
+		int query = uri.indexOf('?');
+		return (query < 0 ? uri : uri.substring(0, query)).replaceAll("/\\d+", "/{id}");
+	}
+
+	@Override
+	public void destroy() {
+		connectionProviders.forEach(ConnectionProvider::dispose);
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Data;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cloud.client.loadbalancer.reactive.LoadBalancedExchangeFilterFunction;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.cloud.gateway.filter.factory.AbstractGatewayFilterFactory;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Mirrors a sample of a route's requests to a shadow instance group, registered in Eureka
+ * under its own name, to see how a new service build behaves under production traffic.
+ * The copy is sent on its own connection pool and subscribed apart from the exchange:
+ * the primary response never waits for it, and shadow responses are discarded. Only
+ * methods without side effects are mirrored by default.
+ *
+ * <pre>
+ * filters:
+ *   - StripPrefix=2
+ *   - name: Shadow
+ *     args:
+ *       service: customers-service-canary
+ *       ratio: 0.1
+ * </pre>
+ *
+ * For each mirrored request, the latency of both sides is timed as
+ * {@code petclinic.gateway.shadow.latency} (tagged route and target=primary|shadow) and
+ * the comparison of their statuses is counted as {@code petclinic.gateway.shadow.requests}
+ * (result=match|mismatch|error, or dropped when too many copies are already in flight).
+ * List it before the filters changing the traffic, such as Collapse, so that the shadow
+ * gets what clients actually sent.
+ */
+@Component
+public class ShadowGatewayFilterFactory extends AbstractGatewayFilterFactory<ShadowGatewayFilterFactory.Config>
+		implements DisposableBean {
+
+	/**
+	 * Lets the shadow service tell mirrored requests apart.
+	 */
+	public static final String SHADOW_HEADER = "X-Shadow-Request";
+
+	private static final int FAILED = 0;
+
+	private static final Set<String> NOT_COPIED_HEADERS = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+
+	static {
+		NOT_COPIED_HEADERS.addAll(Arrays.asList(HttpHeaders.HOST, HttpHeaders.CONTENT_LENGTH,
+				HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONNECTION, RequestDeadline.HEADER));
+	}
+
+	private final LoadBalancedExchangeFilterFunction loadBalancerFilter;
+
+	private final MeterRegistry registry;
+
+	private final ConcurrentMap<String, WebClient> webClients = new ConcurrentHashMap<>();
+
+	private final List<ConnectionProvider> connectionProviders = new CopyOnWriteArrayList<>();
+
+	private final ConcurrentMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+	public ShadowGatewayFilterFactory(LoadBalancedExchangeFilterFunction loadBalancerFilter, MeterRegistry registry) {
+		super(Config.class);
+		this.loadBalancerFilter = loadBalancerFilter;
+		this.registry = registry;
+	}
+
+	@Override
+	public GatewayFilter apply(Config config) {
+		return (exchange, chain) -> {
+			ServerHttpRequest request = exchange.getRequest();
+			if (config.getService() == null || !config.getMethods().contains(request.getMethod())
+					|| ThreadLocalRandom.current().nextDouble() >= config.getRatio()) {
+				return chain.filter(exchange);
+			}
+			Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+			String routeId = route != null ? route.getId() : "unknown";
+			AtomicInteger shadowsInFlight = inFlight.computeIfAbsent(config.getService(), id -> new AtomicInteger());
+			if (shadowsInFlight.incrementAndGet() > config.getMaxInFlight()) {
+				shadowsInFlight.decrementAndGet();
+				counter(routeId, "dropped").increment();
+				return chain.filter(exchange);
+			}
+			Sinks.One<Integer> primaryStatus = Sinks.one();
+			Mono.zip(primaryStatus.asMono(), shadow(config, routeId, request))
+					.doFinally(signal -> shadowsInFlight.decrementAndGet())
+					.subscribe(statuses -> compare(routeId, statuses.getT1(), statuses.getT2()));
+			long start = System.nanoTime();
+			return chain.filter(exchange).doFinally(signal -> {
+				timer(routeId, "primary").record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+				Integer status = exchange.getResponse().getRawStatusCode();
+				primaryStatus.tryEmitValue(status != null ? status : FAILED);
+			});
+		};
+	}
+
+	private Mono<Integer> shadow(Config config, String routeId, ServerHttpRequest request) {
+		URI uri = UriComponentsBuilder.fromUri(request.getURI()).scheme("http").host(config.getService()).port(-1)
+				.build(true).toUri();
+		return webClient(config).method(request.getMethod()).uri(uri).headers(headers -> {
+			request.getHeaders().forEach((name, values) -> {
+				if (!NOT_COPIED_HEADERS.contains(name)) {
+					headers.put(name, values);
+				}
+			});
+			headers.set(SHADOW_HEADER, "true");
+		}).exchangeToMono(response -> response.releaseBody().thenReturn(response.rawStatusCode()))
+				.timeout(config.getTimeout()).elapsed().map(timed -> {
+					timer(routeId, "shadow").record(timed.getT1(), TimeUnit.MILLISECONDS);
+					return timed.getT2();
+				}).onErrorReturn(FAILED);
+	}
+
+	private void compare(String routeId, int primaryStatus, int shadowStatus) {
+		if (shadowStatus == FAILED) {
+			counter(routeId, "error").increment();
+		}
+		else {
+			counter(routeId, primaryStatus == shadowStatus ? "match" : "mismatch").increment();
+		}
+	}
+
+	private WebClient webClient(Config config) {
+		return webClients.computeIfAbsent(config.getService(), serviceId -> {
+			ConnectionProvider connectionProvider = ConnectionProvider.builder("shadow-" + serviceId)
+					.maxConnections(config.getMaxInFlight()).metrics(true).build();
+			connectionProviders.add(connectionProvider);
+			return WebClient.builder().filter(loadBalancerFilter)
+					.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider))).build();
+		});
+	}
+
+	private Timer timer(String routeId, String target) {
+		return Timer.builder("petclinic.gateway.shadow.latency").tag("route", routeId).tag("target", target)
+				.register(registry);
+	}
+
+	private Counter counter(String routeId, String result) {
+		return Counter.builder("petclinic.gateway.shadow.requests").tag("route", routeId).tag("result", result)
+				.register(registry);
+	}
+
+	@Override
+	public void destroy() {
+		connectionProviders.forEach(ConnectionProvider::dispose);
+	}
+
+	@Data
+	public static class Config {
+
+		/**
+		 * Name under which the shadow instances are registered.
+		 */
+		private String service;
+
+		/**
+		 * Share of the requests mirrored, between 0 and 1.
+		 */
+		private double ratio = 0.1;
+
+		private Set<HttpMethod> methods = EnumSet.of(HttpMethod.GET, HttpMethod.HEAD);
+
+		/**
+		 * Copies in flight beyond which new ones are dropped, so that a slow shadow never
+		 * piles up memory in the gateway.
+		 */
+		private int maxInFlight = 50;
+
+		private Duration timeout = Duration.ofSeconds(10);
+
+	}
+
+}
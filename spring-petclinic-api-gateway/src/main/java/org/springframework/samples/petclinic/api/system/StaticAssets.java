@@ -0,0 +1,204 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.FileCopyUtils;
+import org.springframework.web.reactive.function.BodyInserters;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves the AngularJS application as one fingerprinted bundle. When the gateway starts,
+ * the scripts referenced by index.html are concatenated with every template preloaded
+ * into {@code $templateCache}, and the bundle and the rewritten index.html are written to
+ * a work directory next to a gzipped copy. Requests get the gzipped file when they
+ * accept it, streamed from disk with zero-copy. The bundle is cached as immutable since
+ * its name changes with its content; index.html is revalidated with its ETag. Each
+ * content coding has its own strong ETag, either of them validating the current
+ * representation so that a cache switching codings still gets a 304.
+ */
+public class StaticAssets {
+
+	private static final Pattern SCRIPT = Pattern.compile("\\s*<script src=\"/scripts/([^\"]+)\"></script>");
+
+	private static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+	private static final MediaType JAVASCRIPT = MediaType.parseMediaType("application/javascript;charset=UTF-8");
+
+	private static final MediaType HTML = MediaType.parseMediaType("text/html;charset=UTF-8");
+
+	private final Map<String, Asset> bundles = new HashMap<>();
+
+	private final Asset index;
+
+	public StaticAssets() throws IOException {
+		Path directory = Files.createTempDirectory("petclinic-assets");
+		directory.toFile().deleteOnExit();
+		String html = read(new ClassPathResource("static/index.html"));
+		StringBuilder bundle = new StringBuilder();
+		Matcher scripts = SCRIPT.matcher(html);
+		int firstScript = -1;
+		while (scripts.find()) {
+			firstScript = firstScript < 0 ? scripts.start() : firstScript;
+			bundle.append(read(new ClassPathResource("static/scripts/" + scripts.group(1)))).append("\n;\n");
+		}
+		bundle.append(templateCache());
+		String name = "app-" + DigestUtils.md5DigestAsHex(bundle.toString().getBytes(StandardCharsets.UTF_8))
+				.substring(0, 16) + ".js";
+		bundles.put(name, Asset.write(directory, name, bundle.toString(), JAVASCRIPT));
+		String rewritten = firstScript < 0 ? html
+				: new StringBuilder(scripts.replaceAll("")).insert(firstScript,
+						"\n    <script src=\"/assets/" + name + "\"></script>").toString();
+		index = Asset.write(directory, "index.html", rewritten, HTML);
+	}
+
+	public Mono<ServerResponse> bundle(ServerRequest request) {
+		Asset asset = bundles.get(request.pathVariable("name"));
+		return asset == null ? ServerResponse.notFound().build() : serve(request, asset, IMMUTABLE);
+	}
+
+	public Mono<ServerResponse> index(ServerRequest request) {
+		return serve(request, index, "no-cache");
+	}
+
+	private Mono<ServerResponse> serve(ServerRequest request, Asset asset, String cacheControl) {
+		boolean gzip = acceptsGzip(request);
+		String eTag = gzip ? asset.gzippedETag : asset.eTag;
+		if (notModified(request, asset)) {
+			return ServerResponse.status(HttpStatus.NOT_MODIFIED).eTag(eTag)
+					.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+		}
+		ServerResponse.BodyBuilder response = ServerResponse.ok().contentType(asset.mediaType).eTag(eTag)
+				.header(HttpHeaders.CACHE_CONTROL, cacheControl).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (gzip) {
+			response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+		}
+		// file system resources are written with zero-copy by Reactor Netty
+		return response.body(BodyInserters.fromResource(gzip ? asset.gzipped : asset.plain));
+	}
+
+	private static boolean notModified(ServerRequest request, Asset asset) {
+		for (String header : request.headers().header(HttpHeaders.IF_NONE_MATCH)) {
+			for (String tag : header.split(",")) {
+				String trimmed = tag.trim();
+				// weak comparison, as If-None-Match requires
+				String opaque = trimmed.startsWith("W/") ? trimmed.substring(2) : trimmed;
+				if (opaque.equals("*") || opaque.equals(asset.eTag) || opaque.equals(asset.gzippedETag)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static boolean acceptsGzip(ServerRequest request) {
+		for (String header : request.headers().header(HttpHeaders.ACCEPT_ENCODING)) {
+			for (String coding : header.split(",")) {
+				String[] parts = coding.trim().split(";");
+				if (parts[0].trim().equalsIgnoreCase("gzip")) {
+					return parts.length == 1 || !parts[1].trim().matches("q=0(\\.0*)?");
+				}
+			}
+		}
+		return false;
+	}
+
+	private static String templateCache() throws IOException {
+		ObjectMapper json = new ObjectMapper();
+		StringBuilder script = new StringBuilder(
+				"angular.module('petClinicApp').run(['$templateCache', function ($templateCache) {\n");
+		for (Resource template : new PathMatchingResourcePatternResolver()
+				.getResources("classpath:/static/scripts/**/*.html")) {
+			String url = template.getURL().toString();
+			String templateUrl = url.substring(url.lastIndexOf("/static/") + "/static/".length());
+			script.append("    $templateCache.put(").append(quote(json, templateUrl)).append(", ")
+					.append(quote(json, read(template))).append(");\n");
+		}
+		return script.append("}]);\n").toString();
+	}
+
+	private static String quote(ObjectMapper json, String value) throws JsonProcessingException {
+		return json.writeValueAsString(value);
+	}
+
+	private static String read(Resource resource) throws IOException {
+		return FileCopyUtils.copyToString(new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	private static final class Asset {
+
+		private final FileSystemResource plain;
+
+		private final FileSystemResource gzipped;
+
+		private final MediaType mediaType;
+
+		private final String eTag;
+
+		private final String gzippedETag;
+
+		private Asset(Path plain, Path gzipped, MediaType mediaType, String digest) {
+			this.plain = new FileSystemResource(plain);
+			this.gzipped = new FileSystemResource(gzipped);
+			this.mediaType = mediaType;
+			this.eTag = "\"" + digest + "\"";
+			this.gzippedETag = "\"" + digest + "-gzip\"";
+		}
+
+		private static Asset write(Path directory, String name, String content, MediaType mediaType)
+				throws IOException {
+			byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+			Path plain = Files.write(directory.resolve(name), bytes);
+			Path gzipped = directory.resolve(name + ".gz");
+			try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipped)) {
+				{
+					def.setLevel(Deflater.BEST_COMPRESSION);
+				}
+			}) {
+				out.write(bytes);
+			}
+			plain.toFile().deleteOnExit();
+			gzipped.toFile().deleteOnExit();
+			return new Asset(plain, gzipped, mediaType, DigestUtils.md5DigestAsHex(bytes));
+		}
+
+	}
+
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.PathContainer;
+import org.springframework.util.StringUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.pattern.PathPattern;
+import org.springframework.web.util.pattern.PathPatternParser;
+
+import java.net.URI;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Extracts the routing key of a request to a sticky service from, in order, a header,
+ * the URI variable of a path pattern or a query parameter.
+ */
+class StickyKeyResolver {
+
+	private final ApiGatewayProperties.Sticky properties;
+
+	private final List<PathPattern> paths;
+
+	StickyKeyResolver(ApiGatewayProperties.Sticky properties) {
+		this.properties = properties;
+		this.paths = properties.getPaths().stream().map(PathPatternParser.defaultInstance::parse)
+				.collect(Collectors.toList());
+	}
+
+	String resolve(URI uri, HttpHeaders headers) {
+		if (properties.getHeader() != null) {
+			String key = headers.getFirst(properties.getHeader());
+			if (StringUtils.hasText(key)) {
+				return key;
+			}
+		}
+		PathContainer path = PathContainer.parsePath(uri.getRawPath());
+		for (PathPattern pattern : paths) {
+			PathPattern.PathMatchInfo match = pattern.matchAndExtract(path);
+			if (match != null && !match.getUriVariables().isEmpty()) {
+				return match.getUriVariables().values().iterator().next();
+			}
+		}
+		if (properties.getParameter() != null) {
+			String key = UriComponentsBuilder.fromUri(uri).build().getQueryParams().getFirst(properties.getParameter());
+			if (StringUtils.hasText(key)) {
+				return key;
+			}
+		}
+		return null;
+	}
+
+}
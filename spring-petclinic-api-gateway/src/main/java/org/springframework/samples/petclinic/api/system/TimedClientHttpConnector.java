@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.boot.actuate.metrics.http.Outcome;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ClientHttpRequest;
+import org.springframework.http.client.reactive.ClientHttpResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.function.Function;
+
+/**
+ * Times every exchange of a downstream service as {@code petclinic.gateway.downstream.requests}.
+ * Sitting below the load balancer filter, it sees the URI of the chosen instance, so the
+ * timer is tagged by instance as well as by service, uri and outcome. The timing stops
+ * once the response headers are received. The same observations feed the
+ * {@link InstanceStatistics} used by the {@link LatencyAwareLoadBalancer}.
+ */
+class TimedClientHttpConnector implements ClientHttpConnector {
+
+	private final ClientHttpConnector delegate;
+
+	private final String serviceId;
+
+	private final MeterRegistry registry;
+
+	private final InstanceStatistics statistics;
+
+	TimedClientHttpConnector(ClientHttpConnector delegate, String serviceId, MeterRegistry registry,
+			InstanceStatistics statistics) {
+		this.delegate = delegate;
+		this.serviceId = serviceId;
+		this.registry = registry;
+		this.statistics = statistics;
+	}
+
+	@Override
+	public Mono<ClientHttpResponse> connect(HttpMethod method, URI uri,
+			Function<? super ClientHttpRequest, Mono<Void>> requestCallback) {
+		return Mono.defer(() -> {
+			String instance = InstanceStatistics.key(uri.getHost(), uri.getPort());
+			Timer.Sample sample = Timer.start(registry);
+			statistics.start(instance);
+			return delegate.connect(method, uri, requestCallback).doOnSuccess(response -> {
+				long nanos = sample.stop(timer(method, uri, Outcome.forStatus(response.getRawStatusCode()).name(),
+						String.valueOf(response.getRawStatusCode())));
+				statistics.complete(instance, nanos, response.getRawStatusCode() >= 500);
+			}).doOnError(ex -> statistics.complete(instance,
+					sample.stop(timer(method, uri, "UNKNOWN", "CLIENT_ERROR")), true))
+					.doOnCancel(() -> statistics.complete(instance,
+							sample.stop(timer(method, uri, "CANCELLED", "CLIENT_ERROR")), false));
+		});
+	}
+
+	private Timer timer(HttpMethod method, URI uri, String outcome, String status) {
+		return Timer.builder("petclinic.gateway.downstream.requests").tag("service", serviceId)
+				.tag("instance", uri.getHost() + ":" + uri.getPort()).tag("method", method.name())
+				.tag("uri", ServiceWebClients.uriTag(uri.getRawPath())).tag("outcome", outcome).tag("status", status)
+				.register(registry);
+	}
+
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.util.Map;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@code /actuator/timeouts}: the current adaptive time limit of each downstream service.
+ */
+@Component
+@Endpoint(id = "timeouts")
+@RequiredArgsConstructor
+public class TimeoutsEndpoint {
+
+	private final AdaptiveTimeouts adaptiveTimeouts;
+
+	@ReadOperation
+	public Map<String, AdaptiveTimeouts.Snapshot> timeouts() {
+		return adaptiveTimeouts.snapshots();
+	}
+
+	@ReadOperation
+	public AdaptiveTimeouts.Snapshot timeout(@Selector String serviceId) {
+		return adaptiveTimeouts.snapshots().get(serviceId);
+	}
+
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as the generic cell rate algorithm: the whole
+ * state is the theoretical arrival time of the next request, updated with one CAS.
+ */
+final class TokenBucket {
+
+	private final long emissionInterval;
+
+	private final long burstTolerance;
+
+	private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+	TokenBucket(double replenishRate, int burstCapacity) {
+		this.emissionInterval = (long) (TimeUnit.SECONDS.toNanos(1) / replenishRate);
+		this.burstTolerance = emissionInterval * (burstCapacity - 1);
+	}
+
+	/**
+	 * Takes a token if one is available.
+	 * @return 0 when the request is allowed, otherwise the nanos to wait for a token
+	 */
+	long tryConsume(long now) {
+		while (true) {
+			long tat = theoreticalArrival.get();
+			long start = tat == Long.MIN_VALUE ? now : Math.max(tat, now);
+			long wait = start - now - burstTolerance;
+			if (wait > 0) {
+				return wait;
+			}
+			if (theoreticalArrival.compareAndSet(tat, start + emissionInterval)) {
+				return 0;
+			}
+		}
+	}
+
+}
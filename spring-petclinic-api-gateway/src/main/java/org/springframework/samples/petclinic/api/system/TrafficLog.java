@@ -0,0 +1,202 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Append-only log of {@link TrafficRecord}s, split into numbered segment files of at
+ * most {@code maxFileSize} bytes of which only the last {@code maxFiles} are kept, so
+ * that disk use is bounded. Every segment starts with a magic number and a format
+ * version and can be read on its own. Not thread-safe: written by a single thread.
+ */
+public class TrafficLog implements Closeable {
+
+	private static final int MAGIC = 0x50435452;
+
+	private static final int VERSION = 1;
+
+	private static final String PREFIX = "traffic-";
+
+	private static final String SUFFIX = ".bin";
+
+	private final Path directory;
+
+	private final long maxFileSize;
+
+	private final int maxFiles;
+
+	private long sequence;
+
+	private DataOutputStream out;
+
+	private long previousArrivalMicros;
+
+	public TrafficLog(Path directory, long maxFileSize, int maxFiles) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.maxFileSize = maxFileSize;
+		this.maxFiles = maxFiles;
+		List<Path> segments = segments(directory);
+		// never appends to a segment of a previous run, which may end with a torn record
+		this.sequence = segments.isEmpty() ? 0 : sequence(segments.get(segments.size() - 1));
+	}
+
+	public void append(TrafficRecord record) throws IOException {
+		if (out == null || out.size() >= maxFileSize) {
+			roll();
+		}
+		record.writeTo(out, previousArrivalMicros);
+		previousArrivalMicros = record.getArrivalMicros();
+	}
+
+	public void flush() throws IOException {
+		if (out != null) {
+			out.flush();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	private void roll() throws IOException {
+		close();
+		sequence++;
+		Path segment = directory.resolve(String.format("%s%010d%s", PREFIX, sequence, SUFFIX));
+		out = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), 64 * 1024));
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		previousArrivalMicros = 0;
+		List<Path> segments = segments(directory);
+		for (int i = 0; i < segments.size() - maxFiles; i++) {
+			Files.deleteIfExists(segments.get(i));
+		}
+	}
+
+	/**
+	 * Reads every record of the segments found in the directory, oldest first.
+	 */
+	public static Iterator<TrafficRecord> read(Path directory) throws IOException {
+		return new SegmentsIterator(segments(directory));
+	}
+
+	private static List<Path> segments(Path directory) throws IOException {
+		List<Path> segments = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+			stream.forEach(segments::add);
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	private static long sequence(Path segment) {
+		String name = segment.getFileName().toString();
+		return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+	}
+
+	private static final class SegmentsIterator implements Iterator<TrafficRecord> {
+
+		private final Iterator<Path> segments;
+
+		private DataInputStream in;
+
+		private long previousArrivalMicros;
+
+		private TrafficRecord next;
+
+		private SegmentsIterator(List<Path> segments) {
+			this.segments = segments.iterator();
+		}
+
+		@Override
+		public boolean hasNext() {
+			try {
+				while (next == null) {
+					if (in == null) {
+						if (!segments.hasNext()) {
+							return false;
+						}
+						open(segments.next());
+					}
+					try {
+						next = TrafficRecord.readFrom(in, previousArrivalMicros);
+						previousArrivalMicros = next.getArrivalMicros();
+					}
+					catch (EOFException ex) {
+						// end of the segment, or a record torn by a crash
+						in.close();
+						in = null;
+					}
+				}
+				return true;
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException(ex);
+			}
+		}
+
+		@Override
+		public TrafficRecord next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			TrafficRecord record = next;
+			next = null;
+			return record;
+		}
+
+		private void open(Path segment) throws IOException {
+			in = new DataInputStream(new BufferedInputStream(Files.newInputStream(segment), 64 * 1024));
+			previousArrivalMicros = 0;
+			try {
+				if (in.readInt() == MAGIC && in.readUnsignedByte() == VERSION) {
+					return;
+				}
+			}
+			catch (EOFException ex) {
+				// created by a run that stopped before writing anything
+				in.close();
+				in = null;
+				return;
+			}
+			in.close();
+			throw new IOException("Not a traffic log segment: " + segment);
+		}
+
+	}
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import lombok.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One request of the {@link TrafficLog}. Its binary form is made of variable length
+ * integers and length prefixed UTF-8 strings; the arrival time is stored as the
+ * difference, in microseconds, with the previous record of the segment.
+ */
+@Value
+public class TrafficRecord {
+
+	/**
+	 * Microseconds since the epoch at which the gateway received the request.
+	 */
+	long arrivalMicros;
+
+	HttpMethod method;
+
+	/**
+	 * Id of the gateway route, or the pattern of the gateway's own endpoint.
+	 */
+	String route;
+
+	/**
+	 * Path and query string, as received by the gateway.
+	 */
+	String path;
+
+	HttpHeaders headers;
+
+	byte[] body;
+
+	void writeTo(DataOutput out, long previousArrivalMicros) throws IOException {
+		writeVarLong(out, zigZag(arrivalMicros - previousArrivalMicros));
+		out.writeByte(method.ordinal());
+		writeString(out, route);
+		writeString(out, path);
+		int headerCount = 0;
+		for (List<String> values : headers.values()) {
+			headerCount += values.size();
+		}
+		writeVarLong(out, headerCount);
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			for (String value : header.getValue()) {
+				writeString(out, header.getKey());
+				writeString(out, value);
+			}
+		}
+		writeVarLong(out, body.length);
+		out.write(body);
+	}
+
+	static TrafficRecord readFrom(DataInput in, long previousArrivalMicros) throws IOException {
+		long arrivalMicros = previousArrivalMicros + unZigZag(readVarLong(in));
+		HttpMethod method = HttpMethod.values()[in.readUnsignedByte()];
+		String route = readString(in);
+		String path = readString(in);
+		HttpHeaders headers = new HttpHeaders();
+		for (long i = readVarLong(in); i > 0; i--) {
+			headers.add(readString(in), readString(in));
+		}
+		byte[] body = new byte[(int) readVarLong(in)];
+		in.readFully(body);
+		return new TrafficRecord(arrivalMicros, method, route, path, headers, body);
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		writeVarLong(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[(int) readVarLong(in)];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static void writeVarLong(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInput in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+
+	/**
+	 * Out of order completions make some deltas negative; zigzag keeps them short.
+	 */
+	private static long zigZag(long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unZigZag(long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.core.Ordered;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.HandlerMapping;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.springframework.cloud.gateway.support.ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR;
+
+/**
+ * Writes every request reaching the gateway to the {@link TrafficLog} of
+ * {@code api-gateway.recording.directory}, for {@link TrafficReplay} to play it again
+ * later. The body is copied as it streams to the route or endpoint, and records are
+ * handed to a single writer thread through a bounded queue: requests never wait for the
+ * disk, and records are dropped when it cannot keep up. Outcomes are counted as
+ * {@code petclinic.gateway.recording.records}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "api-gateway.recording", name = "enabled", havingValue = "true")
+public class TrafficRecorder implements WebFilter, Ordered, DisposableBean {
+
+	private final ApiGatewayProperties.Recording properties;
+
+	private final Set<String> excludedHeaders;
+
+	private final BlockingQueue<TrafficRecord> queue;
+
+	private final TrafficLog trafficLog;
+
+	private final Thread writer;
+
+	private final Counter written;
+
+	private final Counter dropped;
+
+	private final Counter tooLarge;
+
+	private final Counter failed;
+
+	private final long epochMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+
+	private final long startNanos = System.nanoTime();
+
+	private volatile boolean running = true;
+
+	public TrafficRecorder(ApiGatewayProperties properties, MeterRegistry registry) throws IOException {
+		this.properties = properties.getRecording();
+		this.excludedHeaders = this.properties.getExcludedHeaders().stream()
+				.map(name -> name.toLowerCase(Locale.ROOT)).collect(Collectors.toSet());
+		this.queue = new ArrayBlockingQueue<>(this.properties.getQueueCapacity());
+		this.trafficLog = new TrafficLog(Paths.get(this.properties.getDirectory()), this.properties.getMaxFileSize(),
+				this.properties.getMaxFiles());
+		this.written = counter(registry, "written");
+		this.dropped = counter(registry, "dropped");
+		this.tooLarge = counter(registry, "too-large");
+		this.failed = counter(registry, "failed");
+		this.writer = new Thread(this::write, "traffic-recorder");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (WarmupWebFilter.isWarmup(exchange)) {
+			return chain.filter(exchange);
+		}
+		long arrivalMicros = epochMicros + TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos);
+		BodyCapture body = new BodyCapture(properties.getMaxBodySize());
+		ServerHttpRequest request = new ServerHttpRequestDecorator(exchange.getRequest()) {
+			@Override
+			public Flux<DataBuffer> getBody() {
+				return super.getBody().doOnNext(body::capture);
+			}
+		};
+		return chain.filter(exchange.mutate().request(request).build())
+				.doFinally(signal -> record(exchange, arrivalMicros, body));
+	}
+
+	private void record(ServerWebExchange exchange, long arrivalMicros, BodyCapture body) {
+		if (body.overflowed) {
+			tooLarge.increment();
+			return;
+		}
+		ServerHttpRequest request = exchange.getRequest();
+		HttpHeaders headers = new HttpHeaders();
+		request.getHeaders().forEach((name, values) -> {
+			if (!excludedHeaders.contains(name.toLowerCase(Locale.ROOT))) {
+				headers.put(name, values);
+			}
+		});
+		String path = request.getURI().getRawPath()
+				+ (request.getURI().getRawQuery() != null ? "?" + request.getURI().getRawQuery() : "");
+		TrafficRecord record = new TrafficRecord(arrivalMicros, request.getMethod(), route(exchange), path, headers,
+				body.toByteArray());
+		if (!queue.offer(record)) {
+			dropped.increment();
+		}
+	}
+
+	private static String route(ServerWebExchange exchange) {
+		Route route = exchange.getAttribute(GATEWAY_ROUTE_ATTR);
+		if (route != null) {
+			return route.getId();
+		}
+		Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		return pattern != null ? pattern.toString() : "unmatched";
+	}
+
+	private void write() {
+		while (running || !queue.isEmpty()) {
+			try {
+				TrafficRecord record = queue.poll(1, TimeUnit.SECONDS);
+				if (record == null) {
+					trafficLog.flush();
+				}
+				else {
+					trafficLog.append(record);
+					written.increment();
+				}
+			}
+			catch (IOException ex) {
+				failed.increment();
+				log.warn("Could not write to the traffic log: {}", ex.toString());
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+		try {
+			trafficLog.close();
+		}
+		catch (IOException ex) {
+			log.warn("Could not close the traffic log: {}", ex.toString());
+		}
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		running = false;
+		writer.join(TimeUnit.SECONDS.toMillis(5));
+	}
+
+	@Override
+	public int getOrder() {
+		return Ordered.HIGHEST_PRECEDENCE + 20;
+	}
+
+	private static Counter counter(MeterRegistry registry, String result) {
+		return Counter.builder("petclinic.gateway.recording.records").tag("result", result).register(registry);
+	}
+
+	private static final class BodyCapture extends ByteArrayOutputStream {
+
+		private final int maxSize;
+
+		private boolean overflowed;
+
+		private BodyCapture(int maxSize) {
+			this.maxSize = maxSize;
+		}
+
+		private void capture(DataBuffer buffer) {
+			ByteBuffer bytes = buffer.asByteBuffer();
+			if (overflowed || count + bytes.remaining() > maxSize) {
+				overflowed = true;
+				return;
+			}
+			byte[] copy = new byte[bytes.remaining()];
+			bytes.get(copy);
+			write(copy, 0, copy.length);
+		}
+
+	}
+
+}
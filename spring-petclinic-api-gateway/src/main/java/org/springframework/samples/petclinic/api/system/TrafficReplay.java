@@ -0,0 +1,208 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays a {@link TrafficLog} recorded by the {@link TrafficRecorder} against a gateway,
+ * typically a local stack with stub backends, keeping the recorded inter-arrival times
+ * divided by {@code speed} (0 sends as fast as {@code concurrency} allows). Requests are
+ * sent on schedule whether earlier ones have answered or not, so that a slower build
+ * shows up as higher latency rather than as a lower request rate. Latency percentiles
+ * and errors (failures and 5xx) are then reported per route.
+ * <p>
+ * Records are logged when their request completes, so a slow request comes after
+ * requests that arrived later. They are put back in arrival order within a sliding
+ * window of {@code reorder-window} seconds of recorded time, which should exceed the
+ * longest recorded request.
+ *
+ * <pre>
+ * java -Dloader.main=org.springframework.samples.petclinic.api.system.TrafficReplay \
+ *     -cp spring-petclinic-api-gateway.jar org.springframework.boot.loader.PropertiesLauncher \
+ *     --log=traffic --target=http://localhost:8080 --speed=4 --reorder-window=30
+ * </pre>
+ */
+public final class TrafficReplay {
+
+	private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private static final List<String> NOT_SENT_HEADERS = Arrays.asList(HttpHeaders.HOST, HttpHeaders.CONTENT_LENGTH,
+			HttpHeaders.TRANSFER_ENCODING, HttpHeaders.CONNECTION);
+
+	private final WebClient webClient = WebClient.create();
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final String target;
+
+	private final double speed;
+
+	private final int concurrency;
+
+	TrafficReplay(String target, double speed, int concurrency) {
+		this.target = target.endsWith("/") ? target.substring(0, target.length() - 1) : target;
+		this.speed = speed;
+		this.concurrency = concurrency;
+	}
+
+	public static void main(String[] args) throws IOException {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (!arg.startsWith("--") || separator < 0) {
+				throw new IllegalArgumentException("Expected --name=value but got " + arg);
+			}
+			options.put(arg.substring(2, separator), arg.substring(separator + 1));
+		}
+		TrafficReplay replay = new TrafficReplay(options.getOrDefault("target", "http://localhost:8080"),
+				Double.parseDouble(options.getOrDefault("speed", "1")),
+				Integer.parseInt(options.getOrDefault("concurrency", "1024")));
+		long start = System.nanoTime();
+		Duration reorderWindow = Duration.ofSeconds(Long.parseLong(options.getOrDefault("reorder-window", "30")));
+		long requests = replay.replay(
+				inArrivalOrder(TrafficLog.read(Paths.get(options.getOrDefault("log", "traffic"))), reorderWindow));
+		System.out.printf("%d requests replayed in %.1f s%n", requests,
+				(System.nanoTime() - start) / (double) TimeUnit.SECONDS.toNanos(1));
+		replay.report(System.out);
+	}
+
+	/**
+	 * Plays the records and returns once every response has been received.
+	 */
+	long replay(Iterator<TrafficRecord> records) {
+		long[] first = new long[2];
+		Long count = Flux.fromIterable(() -> records).delayUntil(record -> {
+			if (first[0] == 0) {
+				first[0] = System.nanoTime();
+				first[1] = record.getArrivalMicros();
+			}
+			if (speed <= 0) {
+				return Mono.empty();
+			}
+			long dueNanos = (long) (TimeUnit.MICROSECONDS.toNanos(record.getArrivalMicros() - first[1]) / speed);
+			long waitNanos = first[0] + dueNanos - System.nanoTime();
+			return waitNanos > 0 ? Mono.delay(Duration.ofNanos(waitNanos)) : Mono.empty();
+		}).flatMap(this::send, concurrency).count().block();
+		return count != null ? count : 0;
+	}
+
+	/**
+	 * Sorts records by arrival time, provided none is logged more than {@code window}
+	 * after a record that arrived later than it. Memory holds one window of records.
+	 */
+	static Iterator<TrafficRecord> inArrivalOrder(Iterator<TrafficRecord> records, Duration window) {
+		long windowMicros = TimeUnit.NANOSECONDS.toMicros(window.toNanos());
+		PriorityQueue<TrafficRecord> pending = new PriorityQueue<>(
+				Comparator.comparingLong(TrafficRecord::getArrivalMicros));
+		return new Iterator<TrafficRecord>() {
+
+			private long latestArrival = Long.MIN_VALUE;
+
+			@Override
+			public boolean hasNext() {
+				while (records.hasNext()
+						&& (pending.isEmpty() || latestArrival - pending.peek().getArrivalMicros() < windowMicros)) {
+					TrafficRecord record = records.next();
+					latestArrival = Math.max(latestArrival, record.getArrivalMicros());
+					pending.add(record);
+				}
+				return !pending.isEmpty();
+			}
+
+			@Override
+			public TrafficRecord next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				return pending.poll();
+			}
+
+		};
+	}
+
+	private Mono<Integer> send(TrafficRecord record) {
+		WebClient.RequestBodySpec request = webClient.method(record.getMethod())
+				.uri(URI.create(target + record.getPath())).headers(headers -> {
+					headers.addAll(record.getHeaders());
+					NOT_SENT_HEADERS.forEach(headers::remove);
+				});
+		WebClient.RequestHeadersSpec<?> spec = record.getBody().length > 0 ? request.bodyValue(record.getBody())
+				: request;
+		return spec.exchangeToMono(response -> response.releaseBody().thenReturn(response.rawStatusCode()))
+				.elapsed().map(timed -> {
+					timer(record.getRoute()).record(timed.getT1(), TimeUnit.MILLISECONDS);
+					if (timed.getT2() >= 500) {
+						errors(record.getRoute()).increment();
+					}
+					return timed.getT2();
+				}).onErrorResume(ex -> {
+					errors(record.getRoute()).increment();
+					return Mono.empty();
+				});
+	}
+
+	void report(PrintStream out) {
+		out.printf("%-24s %9s %7s %9s %9s %9s %9s %9s%n", "route", "requests", "errors", "p50 ms", "p90 ms",
+				"p99 ms", "p99.9 ms", "max ms");
+		TreeSet<String> routes = new TreeSet<>();
+		registry.find("replay.latency").timers().forEach(timer -> routes.add(timer.getId().getTag("route")));
+		for (String route : routes) {
+			HistogramSnapshot snapshot = timer(route).takeSnapshot();
+			StringBuilder percentiles = new StringBuilder();
+			for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+				percentiles.append(String.format(" %9.1f", percentile.value(TimeUnit.MILLISECONDS)));
+			}
+			out.printf("%-24s %9d %7d%s %9.1f%n", route, snapshot.count(), (long) errors(route).count(), percentiles,
+					snapshot.max(TimeUnit.MILLISECONDS));
+		}
+	}
+
+	Timer timer(String route) {
+		return Timer.builder("replay.latency").tag("route", route).publishPercentiles(PERCENTILES)
+				.distributionStatisticExpiry(Duration.ofDays(1)).register(registry);
+	}
+
+	Counter errors(String route) {
+		return Counter.builder("replay.errors").tag("route", route).register(registry);
+	}
+
+}
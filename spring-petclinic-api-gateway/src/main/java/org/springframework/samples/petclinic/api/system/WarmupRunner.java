@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends synthetic requests through the owner details aggregation and the routes of each
+ * service, so that the hot paths of the gateway are compiled and its downstream
+ * connection pools opened before real traffic comes in. It runs while the
+ * {@link ApplicationReadyEvent} is handled, hence before readiness turns to accepting
+ * traffic, and only then marks the instance UP in Eureka, where it registers as
+ * STARTING (see {@code eureka.instance.initial-status}). Services still starting only
+ * make the warmup fail faster, within its budget. The requests are marked so that the
+ * {@link WarmupWebFilter} keeps them out of the rate limits, caches and adaptive state
+ * real traffic relies on.
+ */
+@Slf4j
+@Component
+public class WarmupRunner {
+
+	/**
+	 * Only reads, {@code %d} being replaced by owner and pet ids of the sample data.
+	 */
+	private static final List<String> PATHS = Arrays.asList("/api/gateway/owners/%d", "/api/customer/owners/%d",
+			"/api/visit/pets/visits?petId=%d", "/api/vet/vets");
+
+	private static final int SAMPLE_IDS = 10;
+
+	private final ApiGatewayProperties.Warmup properties;
+
+	private final ObjectProvider<ApplicationInfoManager> applicationInfoManager;
+
+	public WarmupRunner(ApiGatewayProperties properties,
+			ObjectProvider<ApplicationInfoManager> applicationInfoManager) {
+		this.properties = properties.getWarmup();
+		this.applicationInfoManager = applicationInfoManager;
+	}
+
+	@EventListener
+	public void warmUp(ApplicationReadyEvent event) {
+		if (properties.isEnabled() && event.getApplicationContext() instanceof WebServerApplicationContext) {
+			int port = ((WebServerApplicationContext) event.getApplicationContext()).getWebServer().getPort();
+			run(WebClient.create("http://localhost:" + port));
+		}
+		applicationInfoManager.ifAvailable(manager -> manager.setInstanceStatus(InstanceInfo.InstanceStatus.UP));
+	}
+
+	private void run(WebClient webClient) {
+		long start = System.nanoTime();
+		AtomicInteger sent = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		Flux.range(0, properties.getRequests()).flatMap(i -> {
+			sent.incrementAndGet();
+			return webClient.get().uri(path(i)).header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+					.header(WarmupWebFilter.HEADER, WarmupWebFilter.TOKEN)
+					.exchangeToMono(response -> response.releaseBody().thenReturn(response.rawStatusCode()))
+					.filter(status -> status >= 400).doOnNext(status -> failed.incrementAndGet())
+					.onErrorResume(ex -> {
+						failed.incrementAndGet();
+						return Mono.empty();
+					});
+		}, properties.getConcurrency()).take(properties.getBudget()).blockLast();
+		log.info("Warmed up with {} requests ({} failed) in {} ms", sent.get(), failed.get(),
+				Duration.ofNanos(System.nanoTime() - start).toMillis());
+	}
+
+	private static String path(int i) {
+		int id = i / PATHS.size() % SAMPLE_IDS + 1;
+		return String.format(PATHS.get(i % PATHS.size()), id);
+	}
+
+}
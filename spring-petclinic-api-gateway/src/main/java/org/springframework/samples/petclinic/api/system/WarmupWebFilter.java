@@ -0,0 +1,70 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.core.Ordered;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.util.UUID;
+
+/**
+ * Recognizes the synthetic requests of the {@link WarmupRunner} by their
+ * {@value #HEADER} header, whose value is only known to this process. They are marked
+ * with an exchange attribute for the filters and in the Reactor context for the
+ * aggregation clients, so that they are neither rate limited, recorded nor counted as
+ * hot keys, and do not feed the circuit breakers, adaptive timeouts and concurrency
+ * limits. The header is not forwarded downstream.
+ */
+@Component
+public class WarmupWebFilter implements WebFilter, Ordered {
+
+	static final String HEADER = "X-Warmup";
+
+	static final String TOKEN = UUID.randomUUID().toString();
+
+	private static final String ATTRIBUTE = WarmupWebFilter.class.getName();
+
+	public static boolean isWarmup(ServerWebExchange exchange) {
+		return exchange.getAttribute(ATTRIBUTE) != null;
+	}
+
+	public static boolean isWarmup(ContextView context) {
+		return context.hasKey(ATTRIBUTE);
+	}
+
+	@Override
+	public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+		if (!TOKEN.equals(exchange.getRequest().getHeaders().getFirst(HEADER))) {
+			return chain.filter(exchange);
+		}
+		exchange.getAttributes().put(ATTRIBUTE, true);
+		ServerHttpRequest request = exchange.getRequest().mutate().headers(headers -> headers.remove(HEADER)).build();
+		return chain.filter(exchange.mutate().request(request).build())
+				.contextWrite(context -> context.put(ATTRIBUTE, true));
+	}
+
+	@Override
+	public int getOrder() {
+		return Ordered.HIGHEST_PRECEDENCE;
+	}
+
+}
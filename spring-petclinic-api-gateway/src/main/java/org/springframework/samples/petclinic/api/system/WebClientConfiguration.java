@@ -0,0 +1,63 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.api.system;
+
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+
+/**
+ * Contributions to the load balanced {@link org.springframework.web.reactive.function.client.WebClient.Builder}
+ * used by the aggregation clients.
+ */
+@Configuration(proxyBeanMethods = false)
+class WebClientConfiguration {
+
+	@Bean
+	@Order(0)
+	WebClientCustomizer collapsingWebClientCustomizer(CollapsingExchangeFilterFunction collapsingFilter) {
+		return builder -> builder.filter(collapsingFilter);
+	}
+
+	/**
+	 * Retries the collapsed exchange as a whole, each retry being hedged on its own.
+	 */
+	@Bean
+	@Order(5)
+	WebClientCustomizer retryingWebClientCustomizer(RetryingExchangeFilterFunction retryingFilter) {
+		return builder -> builder.filter(retryingFilter);
+	}
+
+	/**
+	 * Registered after collapsing so that only the collapsed leader exchange is hedged.
+	 */
+	@Bean
+	@Order(10)
+	WebClientCustomizer hedgingWebClientCustomizer(HedgingExchangeFilterFunction hedgingFilter) {
+		return builder -> builder.filter(hedgingFilter);
+	}
+
+	/**
+	 * Innermost, so that every hedge carries the budget left when it is actually sent.
+	 */
+	@Bean
+	@Order(20)
+	WebClientCustomizer deadlineWebClientCustomizer(DeadlineExchangeFilterFunction deadlineFilter) {
+		return builder -> builder.filter(deadlineFilter);
+	}
+
+}
@@ -3,8 +3,23 @@
 angular.module('ownerList')
     .controller('OwnerListController', ['$http', function ($http) {
         var self = this;
+        var pageSize = 20;
 
-        $http.get('api/customer/owners').then(function (resp) {
-            self.owners = resp.data;
-        });
+        self.owners = [];
+        self.next = 0;
+
+        self.loadMore = function () {
+            if (self.next === null || self.loading) {
+                return;
+            }
+            self.loading = true;
+            $http.get('api/gateway/owners', {params: {after: self.next, size: pageSize}}).then(function (resp) {
+                self.owners = self.owners.concat(resp.data.items);
+                self.next = resp.data.next;
+            }).finally(function () {
+                self.loading = false;
+            });
+        };
+
+        self.loadMore();
     }]);
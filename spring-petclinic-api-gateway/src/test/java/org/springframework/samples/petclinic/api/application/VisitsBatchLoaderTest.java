@@ -0,0 +1,101 @@
+package org.springframework.samples.petclinic.api.application;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.samples.petclinic.api.system.DownstreamResilience;
+import org.springframework.samples.petclinic.api.system.RequestDeadline;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.function.Tuple2;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class VisitsBatchLoaderTest {
+
+	private final VisitsServiceClient visitsServiceClient = mock(VisitsServiceClient.class);
+
+	private final DownstreamResilience resilience = mock(DownstreamResilience.class);
+
+	private final ApiGatewayProperties properties = new ApiGatewayProperties();
+
+	private VisitsBatchLoader loader;
+
+	@BeforeEach
+	void setUp() {
+		given(resilience.run(eq("visits-service"), any(Mono.class)))
+				.willAnswer(invocation -> invocation.getArgument(1));
+		loader = new VisitsBatchLoader(visitsServiceClient, resilience, properties, new SimpleMeterRegistry());
+	}
+
+	@Test
+	void shouldMergeConcurrentLookupsIntoOneCall() {
+		properties.getVisitsBatching().setWindow(Duration.ofMillis(50));
+		given(visitsServiceClient.getVisitsForPets(Arrays.asList(1, 2))).willReturn(Mono.just(visits(1, 2)));
+
+		Tuple2<Visits, Visits> results = Mono
+				.zip(loader.getVisitsForPets(singletonList(1)), loader.getVisitsForPets(singletonList(2)))
+				.block(Duration.ofSeconds(5));
+
+		assertThat(results.getT1().getItems()).extracting(VisitDetails::getPetId).containsExactly(1);
+		assertThat(results.getT2().getItems()).extracting(VisitDetails::getPetId).containsExactly(2);
+		verify(visitsServiceClient, times(1)).getVisitsForPets(anyList());
+	}
+
+	@Test
+	void shouldSendFullBatchWithoutWaitingForWindow() {
+		properties.getVisitsBatching().setWindow(Duration.ofMinutes(1));
+		properties.getVisitsBatching().setMaxBatchSize(2);
+		given(visitsServiceClient.getVisitsForPets(Arrays.asList(1, 2))).willReturn(Mono.just(visits(1, 2)));
+
+		Tuple2<Visits, Visits> results = Mono
+				.zip(loader.getVisitsForPets(singletonList(1)), loader.getVisitsForPets(singletonList(2)))
+				.block(Duration.ofSeconds(5));
+
+		assertThat(results.getT2().getItems()).hasSize(1);
+	}
+
+	@Test
+	void shouldSendBatchWithEarliestDeadlineOfItsCallers() {
+		properties.getVisitsBatching().setWindow(Duration.ofMillis(50));
+		AtomicReference<RequestDeadline> sent = new AtomicReference<>();
+		given(visitsServiceClient.getVisitsForPets(Arrays.asList(1, 2))).willReturn(Mono.deferContextual(context -> {
+			sent.set(context.getOrDefault(RequestDeadline.class, null));
+			return Mono.just(visits(1, 2));
+		}));
+		RequestDeadline later = RequestDeadline.after(Duration.ofSeconds(10));
+		RequestDeadline earlier = RequestDeadline.after(Duration.ofSeconds(5));
+
+		Mono.zip(loader.getVisitsForPets(singletonList(1)).contextWrite(Context.of(RequestDeadline.class, later)),
+				loader.getVisitsForPets(singletonList(2)).contextWrite(Context.of(RequestDeadline.class, earlier)))
+				.block(Duration.ofSeconds(5));
+
+		assertThat(sent.get()).isSameAs(earlier);
+	}
+
+	private Visits visits(Integer... petIds) {
+		Visits visits = new Visits();
+		for (Integer petId : petIds) {
+			VisitDetails visit = new VisitDetails();
+			visit.setPetId(petId);
+			visits.getItems().add(visit);
+		}
+		return visits;
+	}
+
+}
@@ -1,11 +1,15 @@
 package org.springframework.samples.petclinic.api.application;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.ApiGatewayProperties;
+import org.springframework.samples.petclinic.api.system.InstanceStatistics;
+import org.springframework.samples.petclinic.api.system.ServiceWebClients;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
@@ -24,10 +28,14 @@ class VisitsServiceClientIntegrationTest {
 
 	private MockWebServer server;
 
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
 	@BeforeEach
 	void setUp() {
 		server = new MockWebServer();
-		visitsServiceClient = new VisitsServiceClient(WebClient.builder());
+		ApiGatewayProperties properties = new ApiGatewayProperties();
+		visitsServiceClient = new VisitsServiceClient(new ServiceWebClients(WebClient.builder(), properties, registry,
+				new InstanceStatistics(properties)));
 		visitsServiceClient.setHostname(server.url("/").toString());
 	}
 
@@ -36,6 +44,17 @@ class VisitsServiceClientIntegrationTest {
 		this.server.shutdown();
 	}
 
+	@Test
+	void getVisitsForPets_isTimedPerInstance() {
+		prepareResponse(response -> response.setHeader("Content-Type", "application/json").setBody("{\"items\":[]}"));
+
+		visitsServiceClient.getVisitsForPets(Collections.singletonList(1)).block();
+
+		assertEquals(1, registry.get("petclinic.gateway.downstream.requests").tag("service", "visits-service")
+				.tag("instance", server.getHostName() + ":" + server.getPort()).tag("outcome", "SUCCESS").timer()
+				.count());
+	}
+
 	@Test
 	void getVisitsForPets_withAvailableVisitsService() {
 		prepareResponse(response -> response.setHeader("Content-Type", "application/json").setBody(
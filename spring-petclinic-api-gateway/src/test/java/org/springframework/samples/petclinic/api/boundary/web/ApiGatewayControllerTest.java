@@ -1,5 +1,9 @@
 package org.springframework.samples.petclinic.api.boundary.web;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
@@ -8,22 +12,37 @@ import org.springframework.boot.test.autoconfigure.web.reactive.WebFluxTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JAutoConfiguration;
 import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.samples.petclinic.api.application.CustomersServiceClient;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import org.springframework.samples.petclinic.api.application.VisitsBatchLoader;
 import org.springframework.samples.petclinic.api.application.VisitsServiceClient;
 import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.samples.petclinic.api.dto.OwnerSummary;
+import org.springframework.samples.petclinic.api.dto.OwnersPage;
 import org.springframework.samples.petclinic.api.dto.PetDetails;
 import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.VisitSummaries;
+import org.springframework.samples.petclinic.api.dto.VisitSummary;
 import org.springframework.samples.petclinic.api.dto.Visits;
+import org.springframework.samples.petclinic.api.system.AdaptiveTimeouts;
+import org.springframework.samples.petclinic.api.system.DownstreamResilience;
+import org.springframework.samples.petclinic.api.system.HotKeyTracker;
+import org.springframework.samples.petclinic.api.system.WarmupWebFilter;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.net.ConnectException;
+import java.util.Arrays;
 import java.util.Collections;
 
 @ExtendWith(SpringExtension.class)
 @WebFluxTest(controllers = ApiGatewayController.class)
-@Import({ ReactiveResilience4JAutoConfiguration.class, CircuitBreakerConfiguration.class })
+@Import({ ReactiveResilience4JAutoConfiguration.class, CircuitBreakerConfiguration.class, OwnerDetailsCache.class,
+		DownstreamResilience.class, AdaptiveTimeouts.class, HotKeyTracker.class, SimpleMeterRegistry.class })
 class ApiGatewayControllerTest {
 
 	@MockBean
@@ -32,9 +51,23 @@ class ApiGatewayControllerTest {
 	@MockBean
 	private VisitsServiceClient visitsServiceClient;
 
+	@MockBean
+	private VisitsBatchLoader visitsBatchLoader;
+
+	@Autowired
+	private OwnerDetailsCache ownerDetailsCache;
+
 	@Autowired
 	private WebTestClient client;
 
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@BeforeEach
+	void clearCache() {
+		ownerDetailsCache.invalidateAll();
+	}
+
 	@Test
 	void getOwnerDetails_withAvailableVisitsService() {
 		OwnerDetails owner = new OwnerDetails();
@@ -50,7 +83,7 @@ class ApiGatewayControllerTest {
 		visit.setDescription("First visit");
 		visit.setPetId(cat.getId());
 		visits.getItems().add(visit);
-		Mockito.when(visitsServiceClient.getVisitsForPets(Collections.singletonList(cat.getId())))
+		Mockito.when(visitsBatchLoader.getVisitsForPets(Collections.singletonList(cat.getId())))
 				.thenReturn(Mono.just(visits));
 
 		client.get().uri("/api/gateway/owners/1").exchange().expectStatus().isOk()
@@ -73,11 +106,230 @@ class ApiGatewayControllerTest {
 		owner.getPets().add(cat);
 		Mockito.when(customersServiceClient.getOwner(1)).thenReturn(Mono.just(owner));
 
-		Mockito.when(visitsServiceClient.getVisitsForPets(Collections.singletonList(cat.getId())))
+		Mockito.when(visitsBatchLoader.getVisitsForPets(Collections.singletonList(cat.getId())))
 				.thenReturn(Mono.error(new ConnectException("Simulate error")));
 
 		client.get().uri("/api/gateway/owners/1").exchange().expectStatus().isOk().expectBody()
 				.jsonPath("$.pets[0].name").isEqualTo("Garfield").jsonPath("$.pets[0].visits").isEmpty();
 	}
 
+	@Test
+	void getOwnerDetails_withLastKnownVisitsOnServiceError() {
+		Mockito.when(customersServiceClient.getOwner(1)).thenReturn(Mono.just(owner()))
+				.thenReturn(Mono.just(owner()));
+		Visits visits = new Visits();
+		visits.getItems().add(visit());
+		Mockito.when(visitsBatchLoader.getVisitsForPets(Collections.singletonList(20))).thenReturn(Mono.just(visits))
+				.thenReturn(Mono.error(new ConnectException("Simulate error")));
+
+		client.get().uri("/api/gateway/owners/1").exchange().expectStatus().isOk();
+		ownerDetailsCache.invalidateOwner(1);
+
+		client.get().uri("/api/gateway/owners/1").exchange().expectStatus().isOk().expectHeader()
+				.doesNotExist(HttpHeaders.ETAG).expectBody().jsonPath("$.pets[0].visits.length()").isEqualTo(1)
+				.jsonPath("$.pets[0].visits[0].description").isEqualTo("First visit");
+	}
+
+	@Test
+	void getOwnerDetails_withLastKnownOwnerOnCustomersError() {
+		Mockito.when(customersServiceClient.getOwner(1)).thenReturn(Mono.just(owner()))
+				.thenReturn(Mono.error(new ConnectException("Simulate error")));
+		Mockito.when(visitsBatchLoader.getVisitsForPets(Collections.singletonList(20)))
+				.thenReturn(Mono.just(new Visits()));
+
+		client.get().uri("/api/gateway/owners/1").exchange().expectStatus().isOk();
+		ownerDetailsCache.invalidateOwner(1);
+
+		client.get().uri("/api/gateway/owners/1").exchange().expectStatus().isOk().expectBody()
+				.jsonPath("$.pets[0].name").isEqualTo("Garfield");
+	}
+
+	@Test
+	void getOwnerDetails_withFieldsWithoutVisits() {
+		Mockito.when(customersServiceClient.getOwner(1)).thenReturn(Mono.just(owner()));
+
+		client.get().uri("/api/gateway/owners/1?fields=id,pets.name").exchange().expectStatus().isOk().expectBody()
+				.jsonPath("$.id").isEqualTo(1).jsonPath("$.pets[0].name").isEqualTo("Garfield")
+				.jsonPath("$.pets[0].visits").doesNotExist().jsonPath("$.firstName").doesNotExist();
+		Mockito.verifyNoInteractions(visitsBatchLoader);
+	}
+
+	@Test
+	void getOwnerDetails_withFieldsLooksUpCachedOwnerOnce() {
+		Mockito.when(customersServiceClient.getOwner(1)).thenReturn(Mono.just(owner()));
+		Mockito.when(visitsBatchLoader.getVisitsForPets(Collections.singletonList(20)))
+				.thenReturn(Mono.just(new Visits()));
+		client.get().uri("/api/gateway/owners/1").exchange().expectStatus().isOk();
+		double hits = cacheGets("hit");
+		double misses = cacheGets("miss");
+
+		client.get().uri("/api/gateway/owners/1?fields=id,pets.name").exchange().expectStatus().isOk().expectBody()
+				.jsonPath("$.pets[0].name").isEqualTo("Garfield");
+
+		Assertions.assertThat(cacheGets("hit")).isEqualTo(hits + 1);
+		Assertions.assertThat(cacheGets("miss")).isEqualTo(misses);
+		Mockito.verify(customersServiceClient, Mockito.times(1)).getOwner(1);
+	}
+
+	@Test
+	void getOwnerDetails_withWarmupRequestNotCached() {
+		Mockito.when(customersServiceClient.getOwner(1)).thenReturn(Mono.just(owner()));
+		Mockito.when(visitsBatchLoader.getVisitsForPets(Collections.singletonList(20)))
+				.thenReturn(Mono.just(new Visits()));
+
+		client.get().uri("/api/gateway/owners/1")
+				.header("X-Warmup", (String) ReflectionTestUtils.getField(WarmupWebFilter.class, "TOKEN")).exchange()
+				.expectStatus().isOk().expectHeader().doesNotExist(HttpHeaders.ETAG);
+
+		Assertions.assertThat(ownerDetailsCache.get(1)).isEmpty();
+	}
+
+	@Test
+	void getOwnerDetails_withMatchingETag() {
+		OwnerDetails owner = new OwnerDetails();
+		owner.setId(1);
+		Mockito.when(customersServiceClient.getOwner(1)).thenReturn(Mono.just(owner));
+		Mockito.when(visitsBatchLoader.getVisitsForPets(Collections.emptyList())).thenReturn(Mono.just(new Visits()));
+
+		String eTag = client.get().uri("/api/gateway/owners/1").exchange().expectStatus().isOk()
+				.returnResult(OwnerDetails.class).getResponseHeaders().getETag();
+
+		client.get().uri("/api/gateway/owners/1").header(HttpHeaders.IF_NONE_MATCH, eTag).exchange().expectStatus()
+				.isNotModified();
+		Mockito.verify(customersServiceClient, Mockito.times(1)).getOwner(1);
+	}
+
+	@Test
+	void getOwners_withVisitSummaries() {
+		OwnersPage page = new OwnersPage();
+		OwnerSummary owner = new OwnerSummary();
+		owner.setId(1);
+		PetDetails cat = new PetDetails();
+		cat.setId(20);
+		PetDetails dog = new PetDetails();
+		dog.setId(21);
+		owner.getPets().add(cat);
+		owner.getPets().add(dog);
+		page.getItems().add(owner);
+		page.setNext(1);
+		Mockito.when(customersServiceClient.getOwners(0, 1)).thenReturn(Mono.just(page));
+
+		VisitSummaries summaries = new VisitSummaries();
+		summaries.getItems().add(visitSummary(20, 2, "2013-01-04"));
+		summaries.getItems().add(visitSummary(21, 1, "2013-01-02"));
+		Mockito.when(visitsServiceClient.getVisitSummariesForPets(Arrays.asList(20, 21)))
+				.thenReturn(Mono.just(summaries));
+
+		client.get().uri("/api/gateway/owners?size=1").exchange().expectStatus().isOk().expectBody()
+				.jsonPath("$.next").isEqualTo(1).jsonPath("$.items[0].visitCount").isEqualTo(3)
+				.jsonPath("$.items[0].lastVisitDate").isEqualTo("2013-01-04");
+	}
+
+	@Test
+	void getOwners_withVisitSummaryWithoutDate() {
+		OwnersPage page = new OwnersPage();
+		OwnerSummary owner = new OwnerSummary();
+		owner.setId(1);
+		PetDetails cat = new PetDetails();
+		cat.setId(20);
+		PetDetails dog = new PetDetails();
+		dog.setId(21);
+		owner.getPets().add(cat);
+		owner.getPets().add(dog);
+		page.getItems().add(owner);
+		OwnerSummary other = new OwnerSummary();
+		other.setId(2);
+		PetDetails bird = new PetDetails();
+		bird.setId(22);
+		other.getPets().add(bird);
+		page.getItems().add(other);
+		Mockito.when(customersServiceClient.getOwners(0, 2)).thenReturn(Mono.just(page));
+
+		VisitSummaries summaries = new VisitSummaries();
+		summaries.getItems().add(visitSummary(20, 2, "2013-01-04"));
+		summaries.getItems().add(visitSummary(21, 1, null));
+		summaries.getItems().add(visitSummary(22, 1, null));
+		Mockito.when(visitsServiceClient.getVisitSummariesForPets(Arrays.asList(20, 21, 22)))
+				.thenReturn(Mono.just(summaries));
+
+		client.get().uri("/api/gateway/owners?size=2").exchange().expectStatus().isOk().expectBody()
+				.jsonPath("$.items[0].visitCount").isEqualTo(3).jsonPath("$.items[0].lastVisitDate")
+				.isEqualTo("2013-01-04").jsonPath("$.items[1].visitCount").isEqualTo(1)
+				.jsonPath("$.items[1].lastVisitDate").doesNotExist();
+	}
+
+	@Test
+	void getOwners_withFieldsWithoutVisitStatistics() {
+		OwnersPage page = new OwnersPage();
+		OwnerSummary owner = new OwnerSummary();
+		owner.setId(1);
+		owner.setLastName("Franklin");
+		PetDetails cat = new PetDetails();
+		cat.setId(20);
+		owner.getPets().add(cat);
+		page.getItems().add(owner);
+		Mockito.when(customersServiceClient.getOwners(0, 20)).thenReturn(Mono.just(page));
+
+		client.get().uri("/api/gateway/owners?fields=lastName").exchange().expectStatus().isOk().expectBody()
+				.jsonPath("$.items[0].lastName").isEqualTo("Franklin").jsonPath("$.items[0].id").doesNotExist();
+		Mockito.verifyNoInteractions(visitsServiceClient);
+	}
+
+	@Test
+	void getOwnerTimeline_mergesVisitsOfAllPetsNewestFirst() {
+		OwnerDetails owner = owner();
+		PetDetails dog = new PetDetails();
+		dog.setId(21);
+		owner.getPets().add(dog);
+		Mockito.when(customersServiceClient.getOwner(1)).thenReturn(Mono.just(owner));
+		Mockito.when(visitsServiceClient.getVisitTimelineForPet(1, 20, null, Integer.MAX_VALUE, 3))
+				.thenReturn(Flux.just(visit(305, 20, "2013-01-04"), visit(301, 20, "2013-01-01")));
+		Mockito.when(visitsServiceClient.getVisitTimelineForPet(1, 21, null, Integer.MAX_VALUE, 3))
+				.thenReturn(Flux.just(visit(304, 21, "2013-01-04"), visit(302, 21, "2013-01-02"),
+						visit(300, 21, "2012-12-31")));
+
+		client.get().uri("/api/gateway/owners/1/timeline?limit=3").exchange().expectStatus().isOk().expectBody()
+				.jsonPath("$.length()").isEqualTo(3).jsonPath("$[0].id").isEqualTo(305).jsonPath("$[1].id")
+				.isEqualTo(304).jsonPath("$[2].id").isEqualTo(302);
+	}
+
+	private double cacheGets(String result) {
+		return meterRegistry.get("cache.gets").tag("cache", "ownerDetails").tag("result", result).functionCounter()
+				.count();
+	}
+
+	private OwnerDetails owner() {
+		OwnerDetails owner = new OwnerDetails();
+		owner.setId(1);
+		PetDetails cat = new PetDetails();
+		cat.setId(20);
+		cat.setName("Garfield");
+		owner.getPets().add(cat);
+		return owner;
+	}
+
+	private VisitDetails visit() {
+		VisitDetails visit = new VisitDetails();
+		visit.setId(300);
+		visit.setDescription("First visit");
+		visit.setPetId(20);
+		return visit;
+	}
+
+	private VisitDetails visit(int id, int petId, String date) {
+		VisitDetails visit = new VisitDetails();
+		visit.setId(id);
+		visit.setPetId(petId);
+		visit.setDate(date);
+		return visit;
+	}
+
+	private VisitSummary visitSummary(int petId, long count, String lastVisitDate) {
+		VisitSummary summary = new VisitSummary();
+		summary.setPetId(petId);
+		summary.setCount(count);
+		summary.setLastVisitDate(lastVisitDate);
+		return summary;
+	}
+
 }
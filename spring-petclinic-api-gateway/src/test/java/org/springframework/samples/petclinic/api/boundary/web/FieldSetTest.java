@@ -0,0 +1,40 @@
+package org.springframework.samples.petclinic.api.boundary.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FieldSetTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	void shouldIncludeNestedPathsOfWholeProperties() {
+		FieldSet fieldSet = FieldSet.parse("id, pets");
+
+		assertThat(fieldSet.includes("id")).isTrue();
+		assertThat(fieldSet.includes("pets.visits")).isTrue();
+		assertThat(fieldSet.includes("lastName")).isFalse();
+	}
+
+	@Test
+	void shouldNotIncludeUnselectedNestedPaths() {
+		FieldSet fieldSet = FieldSet.parse("pets.name");
+
+		assertThat(fieldSet.includes("pets")).isTrue();
+		assertThat(fieldSet.includes("pets.visits")).isFalse();
+	}
+
+	@Test
+	void shouldPruneUnselectedProperties() throws Exception {
+		JsonNode json = objectMapper.readTree(
+				"{\"id\":1,\"lastName\":\"Franklin\",\"pets\":[{\"name\":\"Leo\",\"visits\":[{\"id\":2}]}]}");
+
+		FieldSet.parse("lastName,pets.name").prune(json);
+
+		assertThat(json.toString()).isEqualTo("{\"lastName\":\"Franklin\",\"pets\":[{\"name\":\"Leo\"}]}");
+	}
+
+}
@@ -0,0 +1,71 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.MockClock;
+import io.micrometer.core.instrument.simple.SimpleConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveTimeoutsTest {
+
+	private final ApiGatewayProperties properties = new ApiGatewayProperties();
+
+	private final MockClock clock = new MockClock();
+
+	private final AdaptiveTimeouts timeouts = new AdaptiveTimeouts(properties,
+			new SimpleMeterRegistry(SimpleConfig.DEFAULT, clock));
+
+	@Test
+	void shouldUseServiceTimeoutUntilEnoughCallsAreObserved() {
+		record("visits-service", Duration.ofMillis(100), 10);
+
+		assertThat(timeouts.timeout("visits-service")).isEqualTo(Duration.ofSeconds(4));
+	}
+
+	@Test
+	void shouldFollowObservedLatency() {
+		record("visits-service", Duration.ofMillis(100), 100);
+
+		assertThat(timeouts.timeout("visits-service")).isBetween(Duration.ofMillis(150), Duration.ofMillis(250));
+	}
+
+	@Test
+	void shouldKeepTimeoutWithinBounds() {
+		record("visits-service", Duration.ofMillis(5), 100);
+		record("customers-service", Duration.ofSeconds(3), 100);
+
+		assertThat(timeouts.timeout("visits-service")).isEqualTo(Duration.ofMillis(50));
+		assertThat(timeouts.timeout("customers-service")).isEqualTo(Duration.ofSeconds(4));
+	}
+
+	@Test
+	void shouldOnlyCountCallsWithinTheWindow() {
+		record("visits-service", Duration.ofMillis(100), 100);
+		clock.add(Duration.ofMinutes(2));
+		record("visits-service", Duration.ofMillis(100), 10);
+
+		assertThat(timeouts.snapshots().get("visits-service").getSamples()).isEqualTo(10);
+		assertThat(timeouts.timeout("visits-service")).isEqualTo(Duration.ofSeconds(4));
+	}
+
+	@Test
+	void shouldRecomputeTimeoutAtMostOncePerRefresh() {
+		record("visits-service", Duration.ofMillis(100), 100);
+		Duration timeout = timeouts.timeout("visits-service");
+		record("visits-service", Duration.ofSeconds(1), 100);
+
+		assertThat(timeouts.timeout("visits-service")).isEqualTo(timeout);
+		clock.add(AdaptiveTimeouts.REFRESH);
+		assertThat(timeouts.timeout("visits-service")).isGreaterThan(timeout);
+	}
+
+	private void record(String serviceId, Duration latency, int calls) {
+		for (int i = 0; i < calls; i++) {
+			timeouts.record(serviceId, latency);
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CollapseGatewayFilterFactoryTest {
+
+	private final GatewayFilter filter = new CollapseGatewayFilterFactory(
+			new RequestCollapser(new SimpleMeterRegistry())).apply(new Object());
+
+	private final AtomicInteger proxied = new AtomicInteger();
+
+	private final Sinks.Empty<Void> release = Sinks.empty();
+
+	@Test
+	void shouldServeConcurrentIdenticalRequestsFromLeaderResponse() {
+		MockServerWebExchange leader = MockServerWebExchange
+				.from(MockServerHttpRequest.get("/owners/7").header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+		MockServerWebExchange follower = MockServerWebExchange
+				.from(MockServerHttpRequest.get("/owners/7").header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+
+		Mono<Void> first = filter.filter(leader, this::proxy).cache();
+		first.subscribe();
+		Mono<Void> second = filter.filter(follower, this::proxy).cache();
+		second.subscribe();
+		release.tryEmitEmpty();
+		Mono.when(first, second).block(Duration.ofSeconds(5));
+
+		assertThat(proxied).hasValue(1);
+		assertThat(follower.getResponse().getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(follower.getResponse().getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+		assertThat(follower.getResponse().getBodyAsString().block()).isEqualTo("owner");
+	}
+
+	@Test
+	void shouldNotCollapseRequestsAcceptingOtherEncodings() {
+		MockServerWebExchange gzip = MockServerWebExchange
+				.from(MockServerHttpRequest.get("/owners/7").header(HttpHeaders.ACCEPT_ENCODING, "gzip"));
+		MockServerWebExchange identity = MockServerWebExchange.from(MockServerHttpRequest.get("/owners/7"));
+
+		Mono<Void> first = filter.filter(gzip, this::proxy).cache();
+		first.subscribe();
+		Mono<Void> second = filter.filter(identity, this::proxy).cache();
+		second.subscribe();
+		release.tryEmitEmpty();
+		Mono.when(first, second).block(Duration.ofSeconds(5));
+
+		assertThat(proxied).hasValue(2);
+		assertThat(identity.getResponse().getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)).isFalse();
+	}
+
+	@Test
+	void shouldNotCollapseUnsafeMethods() {
+		release.tryEmitEmpty();
+
+		filter.filter(MockServerWebExchange.from(MockServerHttpRequest.post("/owners")), this::proxy)
+				.block(Duration.ofSeconds(5));
+		filter.filter(MockServerWebExchange.from(MockServerHttpRequest.post("/owners")), this::proxy)
+				.block(Duration.ofSeconds(5));
+
+		assertThat(proxied).hasValue(2);
+	}
+
+	/**
+	 * Downstream call answering once released, with a body encoded the way the client
+	 * asked for it.
+	 */
+	private Mono<Void> proxy(ServerWebExchange exchange) {
+		proxied.incrementAndGet();
+		return release.asMono().then(Mono.defer(() -> {
+			exchange.getResponse().setStatusCode(HttpStatus.OK);
+			if (exchange.getRequest().getHeaders().containsKey(HttpHeaders.ACCEPT_ENCODING)) {
+				exchange.getResponse().getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+			}
+			DataBuffer body = exchange.getResponse().bufferFactory()
+					.wrap("owner".getBytes(StandardCharsets.UTF_8));
+			return exchange.getResponse().writeWith(Mono.just(body));
+		}));
+	}
+
+}
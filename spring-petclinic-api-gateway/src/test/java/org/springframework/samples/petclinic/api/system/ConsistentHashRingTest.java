@@ -0,0 +1,39 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConsistentHashRingTest {
+
+	@Test
+	void shouldOnlyRemapKeysOfTheNewInstance() {
+		ConsistentHashRing three = new ConsistentHashRing(Arrays.asList("a:80", "b:80", "c:80"), 100);
+		ConsistentHashRing four = new ConsistentHashRing(Arrays.asList("a:80", "b:80", "c:80", "d:80"), 100);
+
+		int moved = 0;
+		for (int owner = 0; owner < 10000; owner++) {
+			String before = three.select(String.valueOf(owner), instance -> true);
+			String after = four.select(String.valueOf(owner), instance -> true);
+			if (!before.equals(after)) {
+				assertThat(after).isEqualTo("d:80");
+				moved++;
+			}
+		}
+		assertThat(moved).isBetween(1500, 3500);
+	}
+
+	@Test
+	void shouldSpillOverToTheNextInstance() {
+		ConsistentHashRing ring = new ConsistentHashRing(Arrays.asList("a:80", "b:80", "c:80"), 100);
+		String first = ring.select("42", instance -> true);
+
+		String second = ring.select("42", instance -> !instance.equals(first));
+
+		assertThat(second).isNotNull().isNotEqualTo(first);
+		assertThat(ring.select("42", instance -> false)).isNull();
+	}
+
+}
@@ -0,0 +1,39 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.circuitbreaker.resilience4j.ReactiveResilience4JCircuitBreakerFactory;
+import reactor.core.publisher.Mono;
+
+import java.net.ConnectException;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DownstreamResilienceTest {
+
+	private final ApiGatewayProperties properties = new ApiGatewayProperties();
+
+	private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+	private final AdaptiveTimeouts adaptiveTimeouts = new AdaptiveTimeouts(properties, registry);
+
+	private final DownstreamResilience resilience = new DownstreamResilience(
+			new ReactiveResilience4JCircuitBreakerFactory(), properties, adaptiveTimeouts, registry);
+
+	@Test
+	void shouldObserveLatencyOfSuccessfulCalls() {
+		resilience.run("visits-service", Mono.just("visits")).block(Duration.ofSeconds(1));
+
+		assertThat(adaptiveTimeouts.snapshots().get("visits-service").getSamples()).isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotObserveLatencyOfFastFailures() {
+		resilience.run("visits-service", Mono.error(new ConnectException("Connection refused")), ex -> Mono.empty())
+				.block(Duration.ofSeconds(1));
+
+		assertThat(adaptiveTimeouts.snapshots().get("visits-service").getSamples()).isZero();
+	}
+
+}
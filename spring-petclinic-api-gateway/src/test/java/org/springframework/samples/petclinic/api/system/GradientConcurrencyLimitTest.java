@@ -0,0 +1,74 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class GradientConcurrencyLimitTest {
+
+	private final ConcurrencyLimitGatewayFilterFactory.Config config = new ConcurrencyLimitGatewayFilterFactory.Config();
+
+	@Test
+	void shouldRejectOverLimit() {
+		config.setInitialLimit(2);
+		GradientConcurrencyLimit limit = new GradientConcurrencyLimit(config);
+
+		assertThat(limit.tryAcquire()).isTrue();
+		assertThat(limit.tryAcquire()).isTrue();
+		assertThat(limit.tryAcquire()).isFalse();
+		assertThat(limit.getInFlight()).isEqualTo(2);
+	}
+
+	@Test
+	void shouldGrowWhileLatencyIsStableUnderLoad() {
+		GradientConcurrencyLimit limit = new GradientConcurrencyLimit(config);
+
+		for (int i = 0; i < 50; i++) {
+			fill(limit);
+			limit.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+			drain(limit);
+		}
+
+		assertThat(limit.getLimit()).isGreaterThan(config.getInitialLimit());
+	}
+
+	@Test
+	void shouldShrinkWhenLatencyDegrades() {
+		GradientConcurrencyLimit limit = new GradientConcurrencyLimit(config);
+		limit.tryAcquire();
+		limit.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+
+		for (int i = 0; i < 20; i++) {
+			limit.tryAcquire();
+			limit.release(TimeUnit.MILLISECONDS.toNanos(500), false);
+		}
+
+		assertThat(limit.getLimit()).isLessThan(config.getInitialLimit());
+	}
+
+	@Test
+	void shouldBackOffOnFailures() {
+		GradientConcurrencyLimit limit = new GradientConcurrencyLimit(config);
+
+		for (int i = 0; i < 100; i++) {
+			limit.tryAcquire();
+			limit.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+		}
+
+		assertThat(limit.getLimit()).isEqualTo(config.getMinLimit());
+	}
+
+	private void fill(GradientConcurrencyLimit limit) {
+		while (limit.tryAcquire()) {
+		}
+	}
+
+	private void drain(GradientConcurrencyLimit limit) {
+		while (limit.getInFlight() > 0) {
+			limit.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+		}
+	}
+
+}
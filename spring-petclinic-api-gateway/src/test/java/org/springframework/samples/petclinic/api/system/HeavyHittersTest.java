@@ -0,0 +1,58 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HeavyHittersTest {
+
+	private final AtomicLong clock = new AtomicLong();
+
+	private final HeavyHitters heavyHitters = new HeavyHitters(4, 256, 10, Duration.ofMinutes(1), clock::get);
+
+	@Test
+	void shouldFindHotKeysAmongManyColdOnes() {
+		Random random = new Random(42);
+		for (int i = 0; i < 20_000; i++) {
+			heavyHitters.record(i % 4 == 0 ? "owner-" + (i / 4 % 3) : "owner-" + (100 + random.nextInt(5_000)));
+		}
+		clock.set(TimeUnit.SECONDS.toNanos(10));
+
+		List<HotKeyTracker.HotKey> top = heavyHitters.top(3);
+
+		assertThat(top).extracting(HotKeyTracker.HotKey::getKey).containsExactlyInAnyOrder("owner-0", "owner-1",
+				"owner-2");
+		assertThat(top).allSatisfy(hotKey -> {
+			// never underestimated
+			assertThat(hotKey.getCount()).isGreaterThanOrEqualTo(5_000 / 3);
+			assertThat(hotKey.getRate()).isGreaterThan(160);
+		});
+		assertThat(heavyHitters.rate()).isEqualTo(2_000);
+	}
+
+	@Test
+	void shouldForgetKeysOlderThanTwoWindows() {
+		for (int i = 0; i < 100; i++) {
+			heavyHitters.record("pet-7");
+		}
+		clock.set(TimeUnit.SECONDS.toNanos(60));
+		heavyHitters.record("pet-9");
+		clock.set(TimeUnit.SECONDS.toNanos(90));
+
+		// half of the previous window is still within the last minute
+		assertThat(heavyHitters.top(1)).extracting(HotKeyTracker.HotKey::getKey).containsExactly("pet-7");
+		assertThat(heavyHitters.top(1).get(0).getCount()).isEqualTo(50);
+
+		clock.set(TimeUnit.SECONDS.toNanos(240));
+		heavyHitters.record("pet-9");
+
+		assertThat(heavyHitters.top(2)).extracting(HotKeyTracker.HotKey::getKey).containsExactly("pet-9");
+	}
+
+}
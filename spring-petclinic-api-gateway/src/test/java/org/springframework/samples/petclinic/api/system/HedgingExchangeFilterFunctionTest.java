@@ -0,0 +1,86 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HedgingExchangeFilterFunctionTest {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final ApiGatewayProperties properties = new ApiGatewayProperties();
+
+	private final ClientRequest request = ClientRequest
+			.create(HttpMethod.GET, URI.create("http://visits-service/pets/visits?petId=7")).build();
+
+	private HedgingExchangeFilterFunction filter;
+
+	@BeforeEach
+	void setUp() {
+		properties.getHedging().getServices().add("visits-service");
+		properties.getHedging().setDelay(Duration.ofMillis(10));
+		filter = new HedgingExchangeFilterFunction(properties, registry);
+	}
+
+	@Test
+	void shouldAnswerWithHedgeWhenFirstInstanceIsSlow() {
+		AtomicInteger exchanges = new AtomicInteger();
+		ClientResponse response = filter.filter(request, req -> exchanges.getAndIncrement() == 0
+				? Mono.<ClientResponse>never() : Mono.just(ClientResponse.create(HttpStatus.OK).build()))
+				.block(Duration.ofSeconds(5));
+
+		assertThat(response.statusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(exchanges.get()).isEqualTo(2);
+		assertThat(hedges("sent")).isEqualTo(1);
+		assertThat(hedges("won")).isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotHedgeOnceBudgetIsSpent() {
+		properties.getHedging().setMaxBudget(1);
+		properties.getHedging().setBudgetRatio(0);
+		filter = new HedgingExchangeFilterFunction(properties, registry);
+		AtomicInteger exchanges = new AtomicInteger();
+
+		for (int i = 0; i < 2; i++) {
+			filter.filter(request, req -> {
+				exchanges.incrementAndGet();
+				return Mono.just(ClientResponse.create(HttpStatus.OK).build()).delayElement(Duration.ofMillis(100));
+			}).block(Duration.ofSeconds(5));
+		}
+
+		assertThat(exchanges.get()).isEqualTo(3);
+		assertThat(hedges("sent")).isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotHedgeOtherServices() {
+		AtomicInteger exchanges = new AtomicInteger();
+		ClientRequest other = ClientRequest.create(HttpMethod.GET, URI.create("http://customers-service/owners/1"))
+				.build();
+
+		filter.filter(other, req -> {
+			exchanges.incrementAndGet();
+			return Mono.just(ClientResponse.create(HttpStatus.OK).build()).delayElement(Duration.ofMillis(50));
+		}).block(Duration.ofSeconds(5));
+
+		assertThat(exchanges.get()).isEqualTo(1);
+	}
+
+	private double hedges(String result) {
+		return registry.get("petclinic.gateway.hedges").tag("result", result).counter().count();
+	}
+
+}
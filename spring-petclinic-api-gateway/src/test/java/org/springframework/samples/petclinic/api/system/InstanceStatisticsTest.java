@@ -0,0 +1,49 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InstanceStatisticsTest {
+
+	private final ApiGatewayProperties properties = new ApiGatewayProperties();
+
+	private final InstanceStatistics statistics = new InstanceStatistics(properties);
+
+	@Test
+	void shouldPreferFasterAndLessLoadedInstances() {
+		complete("fast:8080", 10);
+		complete("slow:8080", 200);
+		assertThat(statistics.cost("fast:8080")).isLessThan(statistics.cost("slow:8080"));
+
+		statistics.start("idle:8080");
+		assertThat(statistics.cost("idle:8080")).isGreaterThan(statistics.cost("unknown:8080"));
+	}
+
+	@Test
+	void shouldEjectAfterConsecutiveFailures() {
+		for (int i = 0; i < properties.getLoadBalancing().getMaxConsecutiveFailures() - 1; i++) {
+			statistics.start("flaky:8080");
+			statistics.complete("flaky:8080", TimeUnit.MILLISECONDS.toNanos(5), true);
+		}
+		assertThat(statistics.isEjected("flaky:8080")).isFalse();
+
+		statistics.start("flaky:8080");
+		statistics.complete("flaky:8080", TimeUnit.MILLISECONDS.toNanos(5), true);
+		assertThat(statistics.isEjected("flaky:8080")).isTrue();
+	}
+
+	@Test
+	void shouldNotEjectOnASingleSlowResponse() {
+		complete("busy:8080", TimeUnit.SECONDS.toMillis(5));
+		assertThat(statistics.isEjected("busy:8080")).isFalse();
+	}
+
+	private void complete(String instance, long latencyMillis) {
+		statistics.start(instance);
+		statistics.complete(instance, TimeUnit.MILLISECONDS.toNanos(latencyMillis), false);
+	}
+
+}
@@ -0,0 +1,61 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.samples.petclinic.api.application.OwnerDetailsCache;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+
+class InvalidateOwnerDetailsGatewayFilterFactoryTest {
+
+	private final OwnerDetailsCache ownerDetailsCache = mock(OwnerDetailsCache.class);
+
+	private final GatewayFilter filter = new InvalidateOwnerDetailsGatewayFilterFactory(ownerDetailsCache)
+			.apply(new Object());
+
+	private final AtomicInteger proxied = new AtomicInteger();
+
+	@Test
+	void shouldInvalidateOwnerAndPetBeforeAndAfterWrites() {
+		filter(MockServerHttpRequest.put("/api/customer/owners/7/pets/12").build());
+
+		assertThat(proxied).hasValue(1);
+		then(ownerDetailsCache).should(times(2)).invalidateOwner(7);
+		then(ownerDetailsCache).should(times(2)).invalidatePet(12);
+	}
+
+	@Test
+	void shouldProxyWritesWithIdsOutOfRange() {
+		filter(MockServerHttpRequest.put("/api/customer/owners/99999999999").build());
+
+		assertThat(proxied).hasValue(1);
+		then(ownerDetailsCache).should(never()).invalidateOwner(anyInt());
+	}
+
+	@Test
+	void shouldNotInvalidateOnReads() {
+		filter(MockServerHttpRequest.get("/api/customer/owners/7").build());
+
+		assertThat(proxied).hasValue(1);
+		then(ownerDetailsCache).should(never()).invalidateOwner(anyInt());
+	}
+
+	private void filter(MockServerHttpRequest request) {
+		filter.filter(MockServerWebExchange.from(request), exchange -> {
+			proxied.incrementAndGet();
+			return Mono.empty();
+		}).block(Duration.ofSeconds(1));
+	}
+
+}
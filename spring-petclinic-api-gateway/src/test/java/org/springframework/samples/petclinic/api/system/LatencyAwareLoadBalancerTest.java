@@ -0,0 +1,40 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LatencyAwareLoadBalancerTest {
+
+	private final List<ServiceInstance> instances = Arrays.asList(instance("10.0.0.1"), instance("10.0.0.2"),
+			instance("10.0.0.3"));
+
+	private final LatencyAwareLoadBalancer loadBalancer = new LatencyAwareLoadBalancer(null,
+			new InstanceStatistics(new ApiGatewayProperties()), new ApiGatewayProperties.Sticky());
+
+	@Test
+	void shouldSendRequestsOfTheSameKeyToTheSameInstance() {
+		ServiceInstance first = loadBalancer.choose(instances, "7", false).getServer();
+
+		assertThat(loadBalancer.choose(instances, "7", false).getServer()).isSameAs(first);
+	}
+
+	@Test
+	void shouldSendHedgeToAnotherInstanceThanTheKeyOwner() {
+		ServiceInstance owner = loadBalancer.choose(instances, "7", false).getServer();
+
+		for (int i = 0; i < 10; i++) {
+			assertThat(loadBalancer.choose(instances, "7", true).getServer()).isNotSameAs(owner);
+		}
+	}
+
+	private static ServiceInstance instance(String host) {
+		return new DefaultServiceInstance(host, "customers-service", host, 8081, false);
+	}
+
+}
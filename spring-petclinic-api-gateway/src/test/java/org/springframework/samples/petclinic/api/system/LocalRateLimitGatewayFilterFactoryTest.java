@@ -0,0 +1,67 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+class LocalRateLimitGatewayFilterFactoryTest {
+
+	private final LocalRateLimitGatewayFilterFactory factory = new LocalRateLimitGatewayFilterFactory(
+			new SimpleMeterRegistry());
+
+	@Test
+	void shouldShareProxyBucketWhenKeyedOnIp() {
+		GatewayFilter filter = filter(LocalRateLimitGatewayFilterFactory.KeyType.IP);
+
+		assertThat(status(filter, "203.0.113.1")).isEqualTo(HttpStatus.OK);
+		assertThat(status(filter, "203.0.113.2")).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+	}
+
+	@Test
+	void shouldGiveEachForwardedClientItsBucket() {
+		GatewayFilter filter = filter(LocalRateLimitGatewayFilterFactory.KeyType.FORWARDED);
+
+		assertThat(status(filter, "203.0.113.1")).isEqualTo(HttpStatus.OK);
+		assertThat(status(filter, "203.0.113.2")).isEqualTo(HttpStatus.OK);
+		assertThat(status(filter, "203.0.113.1")).isEqualTo(HttpStatus.TOO_MANY_REQUESTS);
+	}
+
+	@Test
+	void shouldRefuseHeaderOrPathKeysWithoutKeyName() {
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> filter(LocalRateLimitGatewayFilterFactory.KeyType.HEADER));
+		assertThatIllegalArgumentException().isThrownBy(() -> filter(LocalRateLimitGatewayFilterFactory.KeyType.PATH));
+	}
+
+	private GatewayFilter filter(LocalRateLimitGatewayFilterFactory.KeyType keyType) {
+		LocalRateLimitGatewayFilterFactory.Config config = new LocalRateLimitGatewayFilterFactory.Config();
+		config.setReplenishRate(0.001);
+		config.setBurstCapacity(1);
+		config.setKeyType(keyType);
+		return factory.apply(config);
+	}
+
+	/**
+	 * Status of a request of the client, sent through a reverse proxy.
+	 */
+	private static HttpStatus status(GatewayFilter filter, String client) {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/owners")
+				.remoteAddress(new InetSocketAddress("10.0.0.1", 40000)).header("X-Forwarded-For", client));
+		filter.filter(exchange, ex -> {
+			ex.getResponse().setStatusCode(HttpStatus.OK);
+			return Mono.empty();
+		}).block(Duration.ofSeconds(1));
+		return exchange.getResponse().getStatusCode();
+	}
+
+}
@@ -0,0 +1,51 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RequestCollapserTest {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final RequestCollapser collapser = new RequestCollapser(registry);
+
+	@Test
+	void shouldShareInFlightCall() {
+		AtomicInteger subscriptions = new AtomicInteger();
+		Sinks.One<String> response = Sinks.one();
+		Supplier<Mono<String>> call = () -> response.asMono().doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+		AtomicReference<String> first = new AtomicReference<>();
+		AtomicReference<String> second = new AtomicReference<>();
+		collapser.collapse("test", "key", call).subscribe(first::set);
+		collapser.collapse("test", "key", call).subscribe(second::set);
+		response.tryEmitValue("foo");
+
+		assertThat(first.get()).isEqualTo("foo");
+		assertThat(second.get()).isEqualTo("foo");
+		assertThat(subscriptions.get()).isEqualTo(1);
+		assertThat(registry.get("petclinic.gateway.collapsing").tag("role", "collapsed").counter().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotReuseCompletedCall() {
+		AtomicInteger subscriptions = new AtomicInteger();
+		Supplier<Mono<String>> call = () -> Mono.just("foo").doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+		collapser.collapse("test", "key", call).block();
+		collapser.collapse("test", "key", call).block();
+
+		assertThat(subscriptions.get()).isEqualTo(2);
+	}
+
+}
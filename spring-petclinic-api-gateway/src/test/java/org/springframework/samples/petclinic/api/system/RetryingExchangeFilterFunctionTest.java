@@ -0,0 +1,85 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RetryingExchangeFilterFunctionTest {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final ApiGatewayProperties properties = new ApiGatewayProperties();
+
+	private final ClientRequest request = ClientRequest
+			.create(HttpMethod.GET, URI.create("http://visits-service/pets/visits?petId=7")).build();
+
+	private RetryingExchangeFilterFunction filter;
+
+	@BeforeEach
+	void setUp() {
+		properties.getRetry().setFirstBackoff(Duration.ofMillis(1));
+		filter = new RetryingExchangeFilterFunction(new RetryBudgets(properties, registry));
+	}
+
+	@Test
+	void shouldRetryUnavailableService() {
+		AtomicInteger exchanges = new AtomicInteger();
+		ClientResponse response = filter.filter(request, req -> Mono.just(ClientResponse
+				.create(exchanges.getAndIncrement() == 0 ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.OK).build()))
+				.block(Duration.ofSeconds(5));
+
+		assertThat(response.statusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(exchanges.get()).isEqualTo(2);
+		assertThat(retries("spent")).isEqualTo(1);
+	}
+
+	@Test
+	void shouldDenyRetriesOnceBudgetIsSpent() {
+		properties.getRetry().setMaxBudget(1);
+		properties.getRetry().setBudgetRatio(0);
+		AtomicInteger exchanges = new AtomicInteger();
+
+		for (int i = 0; i < 2; i++) {
+			ClientResponse response = filter.filter(request, req -> {
+				exchanges.incrementAndGet();
+				return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+			}).block(Duration.ofSeconds(5));
+			assertThat(response.statusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE);
+		}
+
+		assertThat(exchanges.get()).isEqualTo(3);
+		assertThat(retries("spent")).isEqualTo(1);
+		assertThat(retries("denied")).isEqualTo(2);
+	}
+
+	@Test
+	void shouldNotRetryUnsafeMethods() {
+		AtomicInteger exchanges = new AtomicInteger();
+		ClientRequest post = ClientRequest.create(HttpMethod.POST, URI.create("http://visits-service/visits")).build();
+
+		filter.filter(post, req -> {
+			exchanges.incrementAndGet();
+			return Mono.just(ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build());
+		}).block(Duration.ofSeconds(5));
+
+		assertThat(exchanges.get()).isEqualTo(1);
+	}
+
+	private double retries(String result) {
+		return registry.get("petclinic.gateway.retries").tag("service", "visits-service").tag("result", result)
+				.counter().count();
+	}
+
+}
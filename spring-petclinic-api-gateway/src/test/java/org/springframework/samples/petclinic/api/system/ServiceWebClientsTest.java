@@ -0,0 +1,55 @@
+package org.springframework.samples.petclinic.api.system;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.api.dto.OwnerDetails;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServiceWebClientsTest {
+
+	private final MockWebServer server = new MockWebServer();
+
+	private final ApiGatewayProperties properties = new ApiGatewayProperties();
+
+	private final ServiceWebClients webClients = new ServiceWebClients(WebClient.builder(), properties,
+			new SimpleMeterRegistry(), new InstanceStatistics(properties));
+
+	@AfterEach
+	void tearDown() throws IOException {
+		webClients.destroy();
+		server.shutdown();
+	}
+
+	@Test
+	void shouldDecodeSmileOwnerWithIsoBirthDate() throws Exception {
+		// encoded the way the services' Boot configured Smile converter does
+		ObjectMapper smile = new ObjectMapper(new SmileFactory())
+				.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		ObjectNode owner = smile.createObjectNode().put("id", 1).put("lastName", "Franklin");
+		owner.putArray("pets").addObject().put("id", 1).put("name", "Leo").putPOJO("birthDate",
+				Date.from(Instant.parse("2010-09-07T12:00:00Z")));
+		server.enqueue(new MockResponse().setHeader("Content-Type", "application/x-jackson-smile")
+				.setBody(new Buffer().write(smile.writeValueAsBytes(owner))));
+
+		OwnerDetails details = webClients.get("customers-service").get().uri(server.url("/owners/1").uri())
+				.retrieve().bodyToMono(OwnerDetails.class).block();
+
+		assertThat(server.takeRequest().getHeader("Accept")).startsWith("application/x-jackson-smile");
+		assertThat(details.getPets().get(0).getBirthDate()).startsWith("2010-09-07");
+	}
+
+}
@@ -0,0 +1,88 @@
+package org.springframework.samples.petclinic.api.system;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.gateway.filter.GatewayFilter;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShadowGatewayFilterFactoryTest {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private final AtomicReference<ClientRequest> shadowRequest = new AtomicReference<>();
+
+	private ShadowGatewayFilterFactory factory;
+
+	@AfterEach
+	void tearDown() {
+		factory.destroy();
+	}
+
+	@Test
+	void shouldMirrorRequestToShadowServiceAndCompareStatuses() {
+		GatewayFilter filter = filter(Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build()));
+		MockServerWebExchange exchange = MockServerWebExchange
+				.from(MockServerHttpRequest.get("/owners/7?fields=id").header("X-Owner-Id", "7"));
+
+		filter.filter(exchange, ex -> {
+			ex.getResponse().setStatusCode(HttpStatus.OK);
+			return Mono.empty();
+		}).block(Duration.ofSeconds(5));
+
+		assertThat(shadowRequest.get().url())
+				.hasToString("http://customers-service-canary/owners/7?fields=id");
+		assertThat(shadowRequest.get().headers().getFirst("X-Owner-Id")).isEqualTo("7");
+		assertThat(shadowRequest.get().headers().getFirst(ShadowGatewayFilterFactory.SHADOW_HEADER)).isEqualTo("true");
+		assertThat(registry.get("petclinic.gateway.shadow.requests").tag("result", "mismatch").counter().count())
+				.isEqualTo(1);
+		assertThat(registry.get("petclinic.gateway.shadow.latency").tag("target", "primary").timer().count())
+				.isEqualTo(1);
+		assertThat(registry.get("petclinic.gateway.shadow.latency").tag("target", "shadow").timer().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void shouldNotWaitForShadowResponse() {
+		GatewayFilter filter = filter(Mono.never());
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/owners/7"));
+
+		filter.filter(exchange, ex -> Mono.empty()).block(Duration.ofSeconds(1));
+
+		assertThat(shadowRequest.get()).isNotNull();
+		assertThat(registry.find("petclinic.gateway.shadow.requests").counter()).isNull();
+	}
+
+	@Test
+	void shouldNotMirrorUnsafeMethods() {
+		GatewayFilter filter = filter(Mono.just(ClientResponse.create(HttpStatus.OK).build()));
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/owners"));
+
+		filter.filter(exchange, ex -> Mono.empty()).block(Duration.ofSeconds(1));
+
+		assertThat(shadowRequest.get()).isNull();
+	}
+
+	private GatewayFilter filter(Mono<ClientResponse> shadowResponse) {
+		factory = new ShadowGatewayFilterFactory((request, next) -> {
+			shadowRequest.set(request);
+			return shadowResponse;
+		}, registry);
+		ShadowGatewayFilterFactory.Config config = new ShadowGatewayFilterFactory.Config();
+		config.setService("customers-service-canary");
+		config.setRatio(1);
+		return factory.apply(config);
+	}
+
+}
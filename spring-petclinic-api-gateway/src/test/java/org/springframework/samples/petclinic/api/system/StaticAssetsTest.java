@@ -0,0 +1,75 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StaticAssetsTest {
+
+	private WebTestClient client;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		StaticAssets staticAssets = new StaticAssets();
+		client = WebTestClient.bindToRouterFunction(
+				RouterFunctions.route(RequestPredicates.GET("/assets/{name}"), staticAssets::bundle)
+						.andRoute(RequestPredicates.GET("/"), staticAssets::index))
+				.build();
+	}
+
+	@Test
+	void shouldServeBundleWithPreloadedTemplates() {
+		String bundle = client.get().uri(bundleUrl()).exchange().expectStatus().isOk().expectHeader()
+				.valueEquals(HttpHeaders.CACHE_CONTROL, "public, max-age=31536000, immutable").expectBody(String.class)
+				.returnResult().getResponseBody();
+
+		assertThat(bundle).contains("angular.module('petClinicApp'")
+				.contains("$templateCache.put(\"scripts/owner-list/owner-list.template.html\"");
+	}
+
+	@Test
+	void shouldServeGzippedBundleWhenAccepted() {
+		client.get().uri(bundleUrl()).header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br").exchange()
+				.expectStatus().isOk().expectHeader().valueEquals(HttpHeaders.CONTENT_ENCODING, "gzip").expectHeader()
+				.valueEquals(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+	}
+
+	@Test
+	void shouldRevalidateIndexWithETag() {
+		String eTag = client.get().uri("/").exchange().expectStatus().isOk().returnResult(String.class)
+				.getResponseHeaders().getETag();
+
+		client.get().uri("/").header(HttpHeaders.IF_NONE_MATCH, eTag).exchange().expectStatus().isNotModified();
+	}
+
+	@Test
+	void shouldTagEachContentCodingDifferently() {
+		String plain = client.get().uri("/").exchange().expectStatus().isOk().returnResult(String.class)
+				.getResponseHeaders().getETag();
+		String gzipped = client.get().uri("/").header(HttpHeaders.ACCEPT_ENCODING, "gzip").exchange().expectStatus()
+				.isOk().returnResult(String.class).getResponseHeaders().getETag();
+
+		assertThat(gzipped).isNotEqualTo(plain);
+		client.get().uri("/").header(HttpHeaders.ACCEPT_ENCODING, "gzip").header(HttpHeaders.IF_NONE_MATCH, plain)
+				.exchange().expectStatus().isNotModified().expectHeader().valueEquals(HttpHeaders.ETAG, gzipped);
+	}
+
+	private String bundleUrl() {
+		String index = client.get().uri("/").exchange().expectStatus().isOk().expectBody(String.class)
+				.returnResult().getResponseBody();
+		assertThat(index).doesNotContain("/scripts/app.js");
+		Matcher bundle = Pattern.compile("/assets/app-[0-9a-f]{16}\\.js").matcher(index);
+		assertThat(bundle.find()).isTrue();
+		return bundle.group();
+	}
+
+}
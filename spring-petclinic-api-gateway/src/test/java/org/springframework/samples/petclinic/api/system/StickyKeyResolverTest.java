@@ -0,0 +1,39 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.net.URI;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StickyKeyResolverTest {
+
+	private final StickyKeyResolver resolver;
+
+	StickyKeyResolverTest() {
+		ApiGatewayProperties.Sticky sticky = new ApiGatewayProperties.Sticky();
+		sticky.setHeader("X-Owner-Id");
+		sticky.setPaths(Collections.singletonList("/owners/{ownerId}/**"));
+		sticky.setParameter("ownerId");
+		resolver = new StickyKeyResolver(sticky);
+	}
+
+	@Test
+	void shouldResolveKeyFromHeaderPathOrParameter() {
+		HttpHeaders headers = new HttpHeaders();
+		assertThat(resolver.resolve(URI.create("http://customers-service/owners/7/pets/3"), headers)).isEqualTo("7");
+		assertThat(resolver.resolve(URI.create("http://customers-service/owners/7"), headers)).isEqualTo("7");
+		assertThat(resolver.resolve(URI.create("http://customers-service/pets?ownerId=8"), headers)).isEqualTo("8");
+
+		headers.set("X-Owner-Id", "9");
+		assertThat(resolver.resolve(URI.create("http://customers-service/owners/7"), headers)).isEqualTo("9");
+	}
+
+	@Test
+	void shouldNotResolveKeyOfUnrelatedRequests() {
+		assertThat(resolver.resolve(URI.create("http://customers-service/owners?size=10"), new HttpHeaders())).isNull();
+	}
+
+}
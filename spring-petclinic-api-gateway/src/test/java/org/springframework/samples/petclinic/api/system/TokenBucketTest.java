@@ -0,0 +1,31 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketTest {
+
+	@Test
+	void shouldAllowBurstThenThrottle() {
+		TokenBucket bucket = new TokenBucket(10, 3);
+		long now = 0;
+
+		assertThat(bucket.tryConsume(now)).isZero();
+		assertThat(bucket.tryConsume(now)).isZero();
+		assertThat(bucket.tryConsume(now)).isZero();
+		assertThat(bucket.tryConsume(now)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+	}
+
+	@Test
+	void shouldReplenishOverTime() {
+		TokenBucket bucket = new TokenBucket(10, 1);
+
+		assertThat(bucket.tryConsume(0)).isZero();
+		assertThat(bucket.tryConsume(TimeUnit.MILLISECONDS.toNanos(50))).isPositive();
+		assertThat(bucket.tryConsume(TimeUnit.MILLISECONDS.toNanos(100))).isZero();
+	}
+
+}
@@ -0,0 +1,82 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrafficLogTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void shouldReadBackRecordsInOrder() throws IOException {
+		HttpHeaders headers = new HttpHeaders();
+		headers.add(HttpHeaders.CONTENT_TYPE, "application/json");
+		headers.add("X-Owner-Id", "7");
+		byte[] body = "{\"description\":\"rabies\"}".getBytes(StandardCharsets.UTF_8);
+		TrafficRecord post = new TrafficRecord(1_600_000_000_000_000L, HttpMethod.POST, "visits-service",
+				"/api/visit/owners/7/pets/9/visits", headers, body);
+		// completed before the previous one although it arrived earlier
+		TrafficRecord get = new TrafficRecord(1_599_999_999_999_250L, HttpMethod.GET, "/api/gateway/owners/{ownerId}",
+				"/api/gateway/owners/7?fields=id,pets", new HttpHeaders(), new byte[0]);
+
+		try (TrafficLog log = new TrafficLog(directory, 1024, 4)) {
+			log.append(post);
+			log.append(get);
+		}
+
+		assertThat(readAll()).containsExactly(post, get);
+	}
+
+	@Test
+	void shouldKeepOnlyTheLastSegments() throws IOException {
+		try (TrafficLog log = new TrafficLog(directory, 100, 3)) {
+			for (int i = 0; i < 50; i++) {
+				log.append(new TrafficRecord(i * 1000L, HttpMethod.GET, "vets-service", "/api/vet/vets/" + i,
+						new HttpHeaders(), new byte[0]));
+			}
+		}
+
+		try (Stream<Path> files = Files.list(directory)) {
+			assertThat(files.count()).isEqualTo(3);
+		}
+		List<TrafficRecord> records = readAll();
+		assertThat(records).isNotEmpty();
+		assertThat(records.get(records.size() - 1).getPath()).isEqualTo("/api/vet/vets/49");
+	}
+
+	@Test
+	void shouldStartNewSegmentOnRestart() throws IOException {
+		try (TrafficLog log = new TrafficLog(directory, 1024, 4)) {
+			log.append(new TrafficRecord(1000, HttpMethod.GET, "vets-service", "/api/vet/vets", new HttpHeaders(),
+					new byte[0]));
+		}
+		try (TrafficLog log = new TrafficLog(directory, 1024, 4)) {
+			log.append(new TrafficRecord(2000, HttpMethod.GET, "vets-service", "/api/vet/vets", new HttpHeaders(),
+					new byte[0]));
+		}
+
+		assertThat(readAll()).extracting(TrafficRecord::getArrivalMicros).containsExactly(1000L, 2000L);
+	}
+
+	private List<TrafficRecord> readAll() throws IOException {
+		List<TrafficRecord> records = new ArrayList<>();
+		Iterator<TrafficRecord> iterator = TrafficLog.read(directory);
+		iterator.forEachRemaining(records::add);
+		return records;
+	}
+
+}
@@ -0,0 +1,35 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TrafficReplayTest {
+
+	@Test
+	void shouldReplayRecordsInArrivalOrder() {
+		// logged on completion: the slow request arriving at 0 comes last
+		List<TrafficRecord> logged = Arrays.asList(record(100), record(300), record(200), record(0),
+				record(5_000_000));
+
+		Iterator<TrafficRecord> replayed = TrafficReplay.inArrivalOrder(logged.iterator(), Duration.ofSeconds(1));
+
+		List<Long> arrivals = new ArrayList<>();
+		replayed.forEachRemaining(record -> arrivals.add(record.getArrivalMicros()));
+		assertThat(arrivals).containsExactly(0L, 100L, 200L, 300L, 5_000_000L);
+	}
+
+	private static TrafficRecord record(long arrivalMicros) {
+		return new TrafficRecord(arrivalMicros, HttpMethod.GET, "vets-service", "/api/vet/vets", new HttpHeaders(),
+				new byte[0]);
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.springframework.samples.petclinic.api.system;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WarmupWebFilterTest {
+
+	private final WarmupWebFilter filter = new WarmupWebFilter();
+
+	private final AtomicReference<ServerWebExchange> filtered = new AtomicReference<>();
+
+	private final AtomicReference<Boolean> warmupContext = new AtomicReference<>();
+
+	@Test
+	void shouldMarkWarmupRequestsAndNotForwardTheirHeader() {
+		MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/api/gateway/owners/1")
+				.header(WarmupWebFilter.HEADER, WarmupWebFilter.TOKEN));
+
+		filter(exchange);
+
+		assertThat(WarmupWebFilter.isWarmup(filtered.get())).isTrue();
+		assertThat(warmupContext.get()).isTrue();
+		assertThat(filtered.get().getRequest().getHeaders().containsKey(WarmupWebFilter.HEADER)).isFalse();
+	}
+
+	@Test
+	void shouldNotTrustWarmupHeaderWithAnotherValue() {
+		MockServerWebExchange exchange = MockServerWebExchange
+				.from(MockServerHttpRequest.get("/api/gateway/owners/1").header(WarmupWebFilter.HEADER, "true"));
+
+		filter(exchange);
+
+		assertThat(WarmupWebFilter.isWarmup(filtered.get())).isFalse();
+		assertThat(warmupContext.get()).isFalse();
+	}
+
+	private void filter(ServerWebExchange exchange) {
+		filter.filter(exchange, ex -> Mono.deferContextual(context -> {
+			filtered.set(ex);
+			warmupContext.set(WarmupWebFilter.isWarmup(context));
+			return Mono.<Void>empty();
+		})).block(Duration.ofSeconds(1));
+	}
+
+}
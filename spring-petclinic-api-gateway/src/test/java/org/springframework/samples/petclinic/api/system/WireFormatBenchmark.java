@@ -0,0 +1,80 @@
+package org.springframework.samples.petclinic.api.system;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.api.dto.VisitDetails;
+import org.springframework.samples.petclinic.api.dto.Visits;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the wire formats offered by the services on a typical visits payload: size,
+ * gzipped size and encode/decode time. Not part of the build, run it on demand with
+ * {@code mvn test -Dtest=WireFormatBenchmark}.
+ */
+class WireFormatBenchmark {
+
+	private static final int WARMUP = 2_000;
+
+	private static final int ITERATIONS = 10_000;
+
+	@Test
+	void compareFormats() throws IOException {
+		Visits visits = visits(200);
+		long json = report("application/json", new ObjectMapper(), visits);
+		long smile = report("application/x-jackson-smile", new ObjectMapper(new SmileFactory()), visits);
+		long cbor = report("application/cbor", new ObjectMapper(new CBORFactory()), visits);
+
+		assertThat(smile).isLessThan(json);
+		assertThat(cbor).isLessThan(json);
+	}
+
+	private long report(String format, ObjectMapper mapper, Visits visits) throws IOException {
+		byte[] bytes = mapper.writeValueAsBytes(visits);
+		byte[] gzipped = gzip(bytes);
+		for (int i = 0; i < WARMUP; i++) {
+			mapper.readValue(mapper.writeValueAsBytes(visits), Visits.class);
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			mapper.writeValueAsBytes(visits);
+		}
+		long encode = (System.nanoTime() - start) / ITERATIONS;
+		start = System.nanoTime();
+		for (int i = 0; i < ITERATIONS; i++) {
+			mapper.readValue(bytes, Visits.class);
+		}
+		long decode = (System.nanoTime() - start) / ITERATIONS;
+		System.out.printf("%-28s %7d bytes %7d gzipped %8d ns encode %8d ns decode%n", format, bytes.length,
+				gzipped.length, encode, decode);
+		return bytes.length;
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(bytes);
+		}
+		return out.toByteArray();
+	}
+
+	private static Visits visits(int count) {
+		Visits visits = new Visits();
+		for (int i = 0; i < count; i++) {
+			VisitDetails visit = new VisitDetails();
+			visit.setId(i);
+			visit.setPetId(i % 13);
+			visit.setDate("2013-01-" + (10 + i % 20));
+			visit.setDescription(i % 2 == 0 ? "rabies shot" : "neutered");
+			visits.getItems().add(visit);
+		}
+		return visits;
+	}
+
+}
@@ -17,9 +17,11 @@ package org.springframework.samples.petclinic.customers;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.client.discovery.EnableDiscoveryClient;
 import org.springframework.cloud.client.loadbalancer.LoadBalanced;
 import org.springframework.context.annotation.Bean;
+import org.springframework.samples.petclinic.customers.system.CustomersProperties;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.reactive.function.client.WebClient;
 
@@ -28,6 +30,7 @@ import org.springframework.web.reactive.function.client.WebClient;
  */
 @EnableDiscoveryClient
 @SpringBootApplication
+@EnableConfigurationProperties(CustomersProperties.class)
 public class CustomersServiceApplication {
 
 	@Bean
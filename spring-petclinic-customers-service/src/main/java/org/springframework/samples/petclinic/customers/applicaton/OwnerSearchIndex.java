@@ -0,0 +1,269 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.applicaton;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.samples.petclinic.customers.model.Owner;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.OwnerSearchTerms;
+import org.springframework.samples.petclinic.customers.system.CustomersProperties;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Typeahead search of owners by last name, city or telephone prefix, answered from
+ * memory by one {@link PrefixIndex} per field, case insensitive, telephones compared on
+ * their digits. Results come in pages of owner ids with an opaque keyset cursor.
+ * <p>
+ * The index is loaded before the instance reports ready and kept up to date with the
+ * owners created and updated through this instance. Owners created through other
+ * instances are picked up every {@code customers.search.catch-up-interval}, updates
+ * made through them at the next full rebuild, every
+ * {@code customers.search.rebuild-interval}.
+ */
+@Component
+@Slf4j
+public class OwnerSearchIndex {
+
+	public enum Field {
+
+		LAST_NAME(OwnerSearchTerms::getLastName), CITY(OwnerSearchTerms::getCity),
+		TELEPHONE(OwnerSearchTerms::getTelephone);
+
+		private final Function<OwnerSearchTerms, String> value;
+
+		Field(Function<OwnerSearchTerms, String> value) {
+			this.value = value;
+		}
+
+		String term(String value) {
+			String term = value.trim().toLowerCase(Locale.ROOT);
+			return this == TELEPHONE ? term.replaceAll("[^0-9]", "") : term;
+		}
+
+	}
+
+	private final OwnerRepository ownerRepository;
+
+	private final CustomersProperties.Search properties;
+
+	private final Map<Field, PrefixIndex> indexes = new EnumMap<>(Field.class);
+
+	private final AtomicInteger highestId = new AtomicInteger();
+
+	private final ScheduledExecutorService scheduler = Executors
+			.newSingleThreadScheduledExecutor(daemonThreadFactory("owner-search-refresh"));
+
+	private long lastRebuild;
+
+	public OwnerSearchIndex(OwnerRepository ownerRepository, CustomersProperties properties) {
+		this.ownerRepository = ownerRepository;
+		this.properties = properties.getSearch();
+		for (Field field : Field.values()) {
+			indexes.put(field, new PrefixIndex(this.properties.getCompactThreshold()));
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void start() {
+		rebuild();
+		long interval = properties.getCatchUpInterval().toMillis();
+		scheduler.scheduleWithFixedDelay(this::refresh, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	void stop() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * Up to {@code size} owners whose field starts with the prefix, ordered by that field
+	 * then id, starting after the cursor returned with the previous page.
+	 * @throws IllegalArgumentException if the cursor is not one returned by this method
+	 */
+	public Hits search(Field field, String prefix, String cursor, int size) {
+		List<PrefixIndex.Entry> entries = indexes.get(field).search(field.term(prefix), decode(cursor), size);
+		List<Integer> ids = entries.stream().map(entry -> entry.id).collect(Collectors.toList());
+		return new Hits(ids, entries.size() == size ? encode(entries.get(size - 1)) : null);
+	}
+
+	public void add(OwnerSearchTerms owner) {
+		for (Field field : Field.values()) {
+			String value = field.value.apply(owner);
+			if (value != null) {
+				indexes.get(field).add(field.term(value), owner.getId());
+			}
+		}
+		highestId.accumulateAndGet(owner.getId(), Math::max);
+	}
+
+	/**
+	 * Replaces the terms of an owner, given as they were before the update, see
+	 * {@link #copyOf(Owner)}.
+	 */
+	public void update(OwnerSearchTerms previous, OwnerSearchTerms current) {
+		for (Field field : Field.values()) {
+			String before = field.value.apply(previous);
+			String after = field.value.apply(current);
+			if (before != null && (after == null || !field.term(before).equals(field.term(after)))) {
+				indexes.get(field).remove(field.term(before), previous.getId());
+			}
+			if (after != null) {
+				indexes.get(field).add(field.term(after), current.getId());
+			}
+		}
+	}
+
+	/**
+	 * Snapshot of the searchable fields of an owner, to take before updating it.
+	 */
+	public static OwnerSearchTerms copyOf(Owner owner) {
+		return new Terms(owner.getId(), owner.getLastName(), owner.getCity(), owner.getTelephone());
+	}
+
+	void rebuild() {
+		long start = System.nanoTime();
+		Map<Field, List<PrefixIndex.Entry>> entries = new EnumMap<>(Field.class);
+		for (Field field : Field.values()) {
+			entries.put(field, new ArrayList<>());
+			indexes.get(field).beginRebuild();
+		}
+		try {
+			int after = 0;
+			List<OwnerSearchTerms> batch;
+			do {
+				batch = ownerRepository.findTermsByIdGreaterThanOrderByIdAsc(after,
+						PageRequest.of(0, properties.getBatchSize()));
+				for (OwnerSearchTerms owner : batch) {
+					for (Field field : Field.values()) {
+						String value = field.value.apply(owner);
+						if (value != null) {
+							entries.get(field).add(new PrefixIndex.Entry(field.term(value), owner.getId()));
+						}
+					}
+					after = owner.getId();
+				}
+			}
+			while (batch.size() == properties.getBatchSize());
+			entries.forEach((field, fieldEntries) -> indexes.get(field).completeRebuild(fieldEntries));
+			highestId.accumulateAndGet(after, Math::max);
+		}
+		catch (RuntimeException ex) {
+			indexes.values().forEach(PrefixIndex::abortRebuild);
+			throw ex;
+		}
+		lastRebuild = System.nanoTime();
+		log.info("Indexed {} owners for search in {} ms", indexes.get(Field.LAST_NAME).size(),
+				TimeUnit.NANOSECONDS.toMillis(lastRebuild - start));
+	}
+
+	/**
+	 * Indexes the owners created through other instances since the last refresh.
+	 */
+	void catchUp() {
+		List<OwnerSearchTerms> batch;
+		do {
+			batch = ownerRepository.findTermsByIdGreaterThanOrderByIdAsc(highestId.get(),
+					PageRequest.of(0, properties.getBatchSize()));
+			batch.forEach(this::add);
+		}
+		while (batch.size() == properties.getBatchSize());
+	}
+
+	private void refresh() {
+		try {
+			if (System.nanoTime() - lastRebuild >= properties.getRebuildInterval().toNanos()) {
+				rebuild();
+			}
+			else {
+				catchUp();
+			}
+		}
+		catch (RuntimeException ex) {
+			log.warn("Owner search refresh failed, keeping the current index: {}", ex.toString());
+		}
+	}
+
+	private static String encode(PrefixIndex.Entry entry) {
+		return Base64.getUrlEncoder().withoutPadding()
+				.encodeToString((entry.id + ":" + entry.term).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static PrefixIndex.Entry decode(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return null;
+		}
+		String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		int separator = decoded.indexOf(':');
+		if (separator < 0) {
+			throw new IllegalArgumentException("Invalid cursor " + cursor);
+		}
+		return new PrefixIndex.Entry(decoded.substring(separator + 1),
+				Integer.parseInt(decoded.substring(0, separator)));
+	}
+
+	private static CustomizableThreadFactory daemonThreadFactory(String name) {
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory(name + "-");
+		threadFactory.setDaemon(true);
+		return threadFactory;
+	}
+
+	@Value
+	public static class Hits {
+
+		List<Integer> ids;
+
+		/**
+		 * Cursor of the next page, {@code null} on the last page.
+		 */
+		String next;
+
+	}
+
+	@Value
+	private static class Terms implements OwnerSearchTerms {
+
+		Integer id;
+
+		String lastName;
+
+		String city;
+
+		String telephone;
+
+	}
+
+}
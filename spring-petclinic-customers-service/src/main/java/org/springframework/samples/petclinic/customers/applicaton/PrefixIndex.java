@@ -0,0 +1,258 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.applicaton;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Prefix index of one owner field: (term, owner id) entries in term then id order, so
+ * that the owners whose term starts with a prefix are adjacent and an entry is also a
+ * keyset cursor. The bulk of the entries lives in two sorted arrays, terms being shared
+ * between the owners having the same one; writes made since go to a small concurrent
+ * overlay, merged in when it grows too large. Searches take no lock, writes are
+ * serialized.
+ */
+final class PrefixIndex {
+
+	private final int compactThreshold;
+
+	private volatile State state = new State(new String[0], new int[0]);
+
+	private int overlaySize;
+
+	/**
+	 * Writes made while a rebuild is loading, applied again to its result.
+	 */
+	private List<Runnable> journal;
+
+	PrefixIndex(int compactThreshold) {
+		this.compactThreshold = compactThreshold;
+	}
+
+	/**
+	 * Up to {@code limit} entries whose term starts with the prefix, strictly after the
+	 * given one if any.
+	 */
+	List<Entry> search(String prefix, Entry after, int limit) {
+		State current = state;
+		Entry from = new Entry(prefix, Integer.MIN_VALUE);
+		if (after != null && after.compareTo(from) > 0) {
+			from = after;
+		}
+		List<Entry> entries = new ArrayList<>(Math.min(limit, 128));
+		int index = current.upperBound(from);
+		Iterator<Entry> added = current.added.tailSet(from, false).iterator();
+		Entry nextAdded = added.hasNext() ? added.next() : null;
+		while (entries.size() < limit) {
+			Entry next;
+			if (index < current.ids.length
+					&& (nextAdded == null || compare(current.terms[index], current.ids[index], nextAdded) < 0)) {
+				next = new Entry(current.terms[index], current.ids[index]);
+				index++;
+				if (current.removed.contains(next)) {
+					continue;
+				}
+			}
+			else if (nextAdded != null) {
+				next = nextAdded;
+				nextAdded = added.hasNext() ? added.next() : null;
+			}
+			else {
+				break;
+			}
+			if (!next.term.startsWith(prefix)) {
+				break;
+			}
+			entries.add(next);
+		}
+		return entries;
+	}
+
+	synchronized void add(String term, int id) {
+		Entry entry = new Entry(term, id);
+		if (journal != null) {
+			journal.add(() -> add(term, id));
+		}
+		State current = state;
+		if (current.removed.remove(entry)) {
+			overlaySize--;
+		}
+		else if (!current.contains(entry) && current.added.add(entry)) {
+			overlaySize++;
+			compactIfNeeded();
+		}
+	}
+
+	synchronized void remove(String term, int id) {
+		Entry entry = new Entry(term, id);
+		if (journal != null) {
+			journal.add(() -> remove(term, id));
+		}
+		State current = state;
+		if (current.added.remove(entry)) {
+			overlaySize--;
+		}
+		else if (current.contains(entry) && current.removed.add(entry)) {
+			overlaySize++;
+			compactIfNeeded();
+		}
+	}
+
+	/**
+	 * Starts recording the writes to apply again once the entries being loaded replace
+	 * the current ones.
+	 */
+	synchronized void beginRebuild() {
+		journal = new ArrayList<>();
+	}
+
+	synchronized void completeRebuild(List<Entry> entries) {
+		List<Runnable> writes = journal != null ? journal : new ArrayList<>();
+		journal = null;
+		state = State.of(entries);
+		overlaySize = 0;
+		writes.forEach(Runnable::run);
+	}
+
+	synchronized void abortRebuild() {
+		journal = null;
+	}
+
+	int size() {
+		State current = state;
+		return current.ids.length + current.added.size() - current.removed.size();
+	}
+
+	private void compactIfNeeded() {
+		if (overlaySize < compactThreshold) {
+			return;
+		}
+		State current = state;
+		List<Entry> entries = new ArrayList<>(current.ids.length + current.added.size());
+		for (int i = 0; i < current.ids.length; i++) {
+			Entry entry = new Entry(current.terms[i], current.ids[i]);
+			if (!current.removed.contains(entry)) {
+				entries.add(entry);
+			}
+		}
+		entries.addAll(current.added);
+		state = State.of(entries);
+		overlaySize = 0;
+	}
+
+	private static int compare(String term, int id, Entry entry) {
+		int byTerm = term.compareTo(entry.term);
+		return byTerm != 0 ? byTerm : Integer.compare(id, entry.id);
+	}
+
+	static final class Entry implements Comparable<Entry> {
+
+		final String term;
+
+		final int id;
+
+		Entry(String term, int id) {
+			this.term = term;
+			this.id = id;
+		}
+
+		@Override
+		public int compareTo(Entry other) {
+			return compare(term, id, other);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Entry)) {
+				return false;
+			}
+			return id == ((Entry) other).id && term.equals(((Entry) other).term);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(term, id);
+		}
+
+	}
+
+	private static final class State {
+
+		private final String[] terms;
+
+		private final int[] ids;
+
+		private final ConcurrentSkipListSet<Entry> added = new ConcurrentSkipListSet<>();
+
+		private final Set<Entry> removed = ConcurrentHashMap.newKeySet();
+
+		private State(String[] terms, int[] ids) {
+			this.terms = terms;
+			this.ids = ids;
+		}
+
+		private static State of(List<Entry> entries) {
+			Entry[] sorted = entries.toArray(new Entry[0]);
+			Arrays.sort(sorted);
+			String[] terms = new String[sorted.length];
+			int[] ids = new int[sorted.length];
+			Map<String, String> shared = new HashMap<>();
+			int size = 0;
+			for (Entry entry : sorted) {
+				if (size > 0 && ids[size - 1] == entry.id && terms[size - 1].equals(entry.term)) {
+					continue;
+				}
+				terms[size] = shared.computeIfAbsent(entry.term, term -> term);
+				ids[size++] = entry.id;
+			}
+			return new State(Arrays.copyOf(terms, size), Arrays.copyOf(ids, size));
+		}
+
+		/**
+		 * Index of the first array entry strictly after the given one.
+		 */
+		private int upperBound(Entry entry) {
+			int low = 0;
+			int high = ids.length;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (compare(terms[middle], ids[middle], entry) <= 0) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		private boolean contains(Entry entry) {
+			int index = upperBound(entry) - 1;
+			return index >= 0 && ids[index] == entry.id && terms[index].equals(entry.term);
+		}
+
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.applicaton;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.samples.petclinic.customers.system.CustomersProperties;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Keeps the last result of the slow third party call in memory so that owner reads never
+ * wait for it. The value is refreshed in the background on a dedicated scheduler, one
+ * call at a time, with a strict timeout. When a refresh fails the previous value keeps
+ * being served until it is older than {@code customers.third-party.max-stale}.
+ */
+@Component
+@Slf4j
+public class ThirdPartyResultCache {
+
+	private final ThirdPartyServiceClient thirdPartyServiceClient;
+
+	private final CustomersProperties.ThirdParty properties;
+
+	private final MeterRegistry registry;
+
+	private final Scheduler scheduler = Schedulers.newSingle("thirdparty-refresh", true);
+
+	private final AtomicReference<Entry> entry = new AtomicReference<>();
+
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	private final Counter hits;
+
+	private final Counter misses;
+
+	private Disposable refreshLoop;
+
+	public ThirdPartyResultCache(ThirdPartyServiceClient thirdPartyServiceClient, CustomersProperties properties,
+			MeterRegistry registry) {
+		this.thirdPartyServiceClient = thirdPartyServiceClient;
+		this.properties = properties.getThirdParty();
+		this.registry = registry;
+		this.hits = Counter.builder("petclinic.thirdparty.cache.gets").tag("result", "hit").register(registry);
+		this.misses = Counter.builder("petclinic.thirdparty.cache.gets").tag("result", "miss").register(registry);
+		Gauge.builder("petclinic.thirdparty.cache.staleness", this, ThirdPartyResultCache::stalenessSeconds)
+				.description("Age of the cached third party result").baseUnit("seconds").register(registry);
+	}
+
+	@PostConstruct
+	void start() {
+		refreshLoop = Flux.interval(Duration.ZERO, properties.getRefreshInterval(), scheduler).onBackpressureDrop()
+				.concatMap(tick -> refresh(), 1).subscribe();
+	}
+
+	@PreDestroy
+	void stop() {
+		if (refreshLoop != null) {
+			refreshLoop.dispose();
+		}
+		scheduler.dispose();
+	}
+
+	/**
+	 * Returns the cached third party result, or nothing when it has never been fetched or
+	 * has been stale for too long. Never blocks.
+	 */
+	public Optional<String> get() {
+		Entry current = entry.get();
+		if (current == null || current.age().compareTo(properties.getMaxStale()) > 0) {
+			misses.increment();
+			return Optional.empty();
+		}
+		hits.increment();
+		return Optional.of(current.value);
+	}
+
+	Mono<Void> refresh() {
+		if (!refreshing.compareAndSet(false, true)) {
+			return Mono.empty();
+		}
+		Timer.Sample sample = Timer.start(registry);
+		return thirdPartyServiceClient.getExternalService().timeout(properties.getTimeout(), scheduler)
+				.doOnNext(value -> {
+					entry.set(new Entry(value, System.nanoTime()));
+					sample.stop(refreshTimer("success"));
+				}).doOnError(ex -> {
+					sample.stop(refreshTimer(ex instanceof TimeoutException ? "timeout" : "error"));
+					log.warn("Third party refresh failed, keeping previous value: {}", ex.toString());
+				}).onErrorResume(ex -> Mono.empty()).doFinally(signal -> refreshing.set(false)).then();
+	}
+
+	private Timer refreshTimer(String outcome) {
+		return Timer.builder("petclinic.thirdparty.refresh").tag("outcome", outcome).register(registry);
+	}
+
+	private double stalenessSeconds() {
+		Entry current = entry.get();
+		return current == null ? Double.NaN : current.age().toMillis() / 1000.0;
+	}
+
+	private static final class Entry {
+
+		private final String value;
+
+		private final long fetchedAt;
+
+		private Entry(String value, long fetchedAt) {
+			this.value = value;
+			this.fetchedAt = fetchedAt;
+		}
+
+		private Duration age() {
+			return Duration.ofNanos(System.nanoTime() - fetchedAt);
+		}
+
+	}
+
+}
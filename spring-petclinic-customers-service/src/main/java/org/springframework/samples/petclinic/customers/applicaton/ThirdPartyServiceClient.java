@@ -15,45 +15,42 @@
  */
 package org.springframework.samples.petclinic.customers.applicaton;
 
-import io.netty.resolver.DefaultAddressResolverGroup;
-import lombok.RequiredArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
-import org.springframework.cloud.client.loadbalancer.LoadBalanced;
-import org.springframework.cloud.client.loadbalancer.reactive.LoadBalancedExchangeFilterFunction;
-import org.springframework.http.client.reactive.HttpComponentsClientHttpConnector;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.samples.petclinic.customers.system.CustomersProperties;
 import org.springframework.stereotype.Component;
-import org.springframework.web.reactive.function.client.ClientRequest;
-import org.springframework.web.reactive.function.client.ClientResponse;
-import org.springframework.web.reactive.function.client.ExchangeFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
-
-import java.util.List;
+import reactor.netty.resources.ConnectionProvider;
 
 /**
  * @author Maciej Szarlinski
  */
 @Component
-@RequiredArgsConstructor
-@Slf4j
 public class ThirdPartyServiceClient {
 
-	// Could be changed for testing purpose
-	private String hostname = "http://thirdparty-service/";
+	private final String url;
+
+	private final WebClient webClient;
 
-	private final WebClient.Builder webClientBuilder;
+	/**
+	 * Built once on its own keep-alive connection pool, whose gauges are published as
+	 * {@code reactor.netty.connection.provider.*} with name thirdparty-service.
+	 */
+	public ThirdPartyServiceClient(WebClient.Builder webClientBuilder, CustomersProperties properties) {
+		CustomersProperties.ThirdParty thirdParty = properties.getThirdParty();
+		this.url = thirdParty.getUrl().endsWith("/") ? thirdParty.getUrl() : thirdParty.getUrl() + "/";
+		ConnectionProvider connectionProvider = ConnectionProvider.builder("thirdparty-service")
+				.maxConnections(thirdParty.getMaxConnections())
+				.pendingAcquireTimeout(thirdParty.getPendingAcquireTimeout()).maxIdleTime(thirdParty.getMaxIdleTime())
+				.metrics(true).build();
+		this.webClient = webClientBuilder.clone()
+				.clientConnector(new ReactorClientHttpConnector(HttpClient.create(connectionProvider).keepAlive(true)))
+				.build();
+	}
 
-	public String getExternalService() {
-		log.info("hello");
-		// HttpClient reactorHttpClient =
-		// HttpClient.create().resolver(DefaultAddressResolverGroup.INSTANCE);
-		String body = webClientBuilder
-				// .clientConnector(new ReactorClientHttpConnector(reactorHttpClient))
-				.build().get().uri(hostname + "external").retrieve().bodyToMono(String.class).block();
-		log.info("world");
-		return body;
+	public Mono<String> getExternalService() {
+		return webClient.get().uri(url + "external").retrieve().bodyToMono(String.class);
 	}
 
 }
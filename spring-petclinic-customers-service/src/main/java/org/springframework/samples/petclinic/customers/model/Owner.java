@@ -48,7 +48,7 @@ import org.springframework.core.style.ToStringCreator;
  */
 @Entity
 @Table(name = "owners")
-public class Owner {
+public class Owner implements OwnerSearchTerms {
 
 	@Id
 	@GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -15,7 +15,13 @@
  */
 package org.springframework.samples.petclinic.customers.model;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Repository class for <code>Owner</code> domain objects All method names are compliant
@@ -31,4 +37,25 @@ import org.springframework.data.jpa.repository.JpaRepository;
  */
 public interface OwnerRepository extends JpaRepository<Owner, Integer> {
 
+	/**
+	 * Retrieve the next {@link Owner}s ordered by id, starting right after the given one.
+	 * Seeks through the primary key index instead of counting skipped rows.
+	 * @param id the last id of the previous page, 0 for the first page
+	 * @param pageable the page size (page number must be 0)
+	 */
+	List<Owner> findByIdGreaterThanOrderByIdAsc(int id, Pageable pageable);
+
+	/**
+	 * Same as {@link #findByIdGreaterThanOrderByIdAsc} but only selects the searchable
+	 * fields, to load every owner in batches.
+	 */
+	List<OwnerSearchTerms> findTermsByIdGreaterThanOrderByIdAsc(int id, Pageable pageable);
+
+	/**
+	 * Retrieve the {@link Owner}s with the given ids along with their pets, in a single
+	 * query.
+	 */
+	@Query("SELECT DISTINCT owner FROM Owner owner LEFT JOIN FETCH owner.pets WHERE owner.id IN :ids")
+	List<Owner> findWithPetsByIdIn(@Param("ids") Collection<Integer> ids);
+
 }
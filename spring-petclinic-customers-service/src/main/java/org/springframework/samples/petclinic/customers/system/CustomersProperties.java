@@ -0,0 +1,121 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.system;
+
+import java.time.Duration;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Typesafe custom configuration.
+ */
+@Data
+@ConfigurationProperties(prefix = "customers")
+public class CustomersProperties {
+
+	private final ThirdParty thirdParty = new ThirdParty();
+
+	private final Warmup warmup = new Warmup();
+
+	private final Search search = new Search();
+
+	@Data
+	public static class ThirdParty {
+
+		/**
+		 * Base URL of the third party service.
+		 */
+		private String url = "http://thirdparty-service/";
+
+		/**
+		 * Delay between two background refreshes of the cached third party result.
+		 */
+		private Duration refreshInterval = Duration.ofSeconds(30);
+
+		/**
+		 * Hard timeout of a single call to the third party service.
+		 */
+		private Duration timeout = Duration.ofSeconds(3);
+
+		/**
+		 * How long a cached result may still be served once refreshes start failing.
+		 */
+		private Duration maxStale = Duration.ofMinutes(10);
+
+		/**
+		 * Size of the dedicated connection pool; refreshes are sequential so a few suffice.
+		 */
+		private int maxConnections = 4;
+
+		private Duration pendingAcquireTimeout = Duration.ofSeconds(1);
+
+		private Duration maxIdleTime = Duration.ofSeconds(30);
+
+	}
+
+	@Data
+	public static class Warmup {
+
+		/**
+		 * Whether synthetic requests are sent through the hot paths before the instance
+		 * takes traffic.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * Upper bound of the warmup, after which the instance reports UP anyway.
+		 */
+		private Duration budget = Duration.ofSeconds(30);
+
+		private int requests = 5000;
+
+		/**
+		 * Requests sent in parallel, which is also the number of database connections
+		 * warmed up.
+		 */
+		private int concurrency = 4;
+
+	}
+
+	@Data
+	public static class Search {
+
+		/**
+		 * Delay between two lookups of the owners created through other instances.
+		 */
+		private Duration catchUpInterval = Duration.ofSeconds(10);
+
+		/**
+		 * Delay between two full reloads of the index, which pick up the updates made
+		 * through other instances.
+		 */
+		private Duration rebuildInterval = Duration.ofMinutes(30);
+
+		/**
+		 * Owners loaded per query while indexing.
+		 */
+		private int batchSize = 10_000;
+
+		/**
+		 * Writes kept apart from the sorted arrays of a field before they are merged in.
+		 */
+		private int compactThreshold = 10_000;
+
+	}
+
+}
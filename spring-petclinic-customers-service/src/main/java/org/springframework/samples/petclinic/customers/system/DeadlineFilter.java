@@ -0,0 +1,64 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.customers.system;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Rejects with a 504 the requests whose {@link RequestDeadline} has already passed when
+ * they arrive, and makes the deadline of the others available to the database calls
+ * made while handling them.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+@Slf4j
+public class DeadlineFilter extends OncePerRequestFilter {
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+		RequestDeadline deadline = RequestDeadline.fromHeaderValue(request.getHeader(RequestDeadline.HEADER));
+		if (deadline == null) {
+			chain.doFilter(request, response);
+			return;
+		}
+		if (deadline.isExpired()) {
+			log.debug("Rejecting {} {}, its deadline has passed", request.getMethod(), request.getRequestURI());
+			response.sendError(HttpStatus.GATEWAY_TIMEOUT.value(), "Deadline exceeded");
+			return;
+		}
+		RequestDeadline.set(deadline);
+		try {
+			chain.doFilter(request, response);
+		}
+		finally {
+			RequestDeadline.clear();
+		}
+	}
+
+}
@@ -17,17 +17,26 @@ package org.springframework.samples.petclinic.customers.web;
 
 import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
-import org.springframework.samples.petclinic.customers.applicaton.ThirdPartyServiceClient;
+import org.springframework.samples.petclinic.customers.applicaton.OwnerSearchIndex;
+import org.springframework.samples.petclinic.customers.applicaton.ThirdPartyResultCache;
 import org.springframework.samples.petclinic.customers.model.Owner;
 import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.OwnerSearchTerms;
 import org.springframework.web.bind.annotation.*;
-import reactor.core.publisher.Mono;
+import org.springframework.web.server.ResponseStatusException;
 
 import javax.validation.Valid;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * @author Juergen Hoeller
@@ -43,9 +52,13 @@ import java.util.Optional;
 @Slf4j
 class OwnerResource {
 
+	static final int MAX_PAGE_SIZE = 100;
+
 	private final OwnerRepository ownerRepository;
 
-	private final ThirdPartyServiceClient thirdPartyServiceClient;
+	private final ThirdPartyResultCache thirdPartyResultCache;
+
+	private final OwnerSearchIndex ownerSearchIndex;
 
 	/**
 	 * Create Owner
@@ -53,7 +66,9 @@ class OwnerResource {
 	@PostMapping
 	@ResponseStatus(HttpStatus.CREATED)
 	public Owner createOwner(@Valid @RequestBody Owner owner) {
-		return ownerRepository.save(owner);
+		final Owner saved = ownerRepository.save(owner);
+		ownerSearchIndex.add(saved);
+		return saved;
 	}
 
 	/**
@@ -61,8 +76,7 @@ class OwnerResource {
 	 */
 	@GetMapping(value = "/{ownerId}")
 	public Optional<Owner> findOwner(@PathVariable("ownerId") int ownerId) {
-		String results = thirdPartyServiceClient.getExternalService();
-		log.info("External call result = {} ", results);
+		log.info("External call result = {} ", thirdPartyResultCache.get().orElse(null));
 		return ownerRepository.findById(ownerId);
 	}
 
@@ -74,6 +88,58 @@ class OwnerResource {
 		return ownerRepository.findAll();
 	}
 
+	/**
+	 * Read a page of Owners ordered by id, starting after the given owner id
+	 */
+	@GetMapping(params = "size")
+	public OwnerPage findPage(@RequestParam(value = "after", defaultValue = "0") int after,
+			@RequestParam("size") int size) {
+		final int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		final List<Owner> owners = ownerRepository.findByIdGreaterThanOrderByIdAsc(after, PageRequest.of(0, pageSize));
+		final Integer next = owners.size() == pageSize ? owners.get(pageSize - 1).getId() : null;
+		return new OwnerPage(owners, next);
+	}
+
+	/**
+	 * Search Owners whose last name, city or telephone starts with the given prefix,
+	 * ordered by that field, a page at a time
+	 */
+	@GetMapping("/search")
+	public OwnerSearchPage search(@RequestParam(value = "lastName", required = false) String lastName,
+			@RequestParam(value = "city", required = false) String city,
+			@RequestParam(value = "telephone", required = false) String telephone,
+			@RequestParam(value = "after", required = false) String after,
+			@RequestParam(value = "size", defaultValue = "20") int size) {
+		final int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+		final OwnerSearchIndex.Hits hits;
+		try {
+			if (lastName != null && city == null && telephone == null) {
+				hits = ownerSearchIndex.search(OwnerSearchIndex.Field.LAST_NAME, lastName, after, pageSize);
+			}
+			else if (city != null && lastName == null && telephone == null) {
+				hits = ownerSearchIndex.search(OwnerSearchIndex.Field.CITY, city, after, pageSize);
+			}
+			else if (telephone != null && lastName == null && city == null) {
+				hits = ownerSearchIndex.search(OwnerSearchIndex.Field.TELEPHONE, telephone, after, pageSize);
+			}
+			else {
+				throw new IllegalArgumentException("Exactly one of lastName, city and telephone is expected");
+			}
+		}
+		catch (IllegalArgumentException ex) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, ex.getMessage());
+		}
+		if (hits.getIds().isEmpty()) {
+			return new OwnerSearchPage(Collections.emptyList(), null);
+		}
+		final Map<Integer, Owner> owners = ownerRepository.findWithPetsByIdIn(hits.getIds()).stream()
+				.collect(Collectors.toMap(Owner::getId, Function.identity()));
+		// owners deleted since they were indexed are skipped
+		final List<Owner> items = hits.getIds().stream().map(owners::get).filter(Objects::nonNull)
+				.collect(Collectors.toList());
+		return new OwnerSearchPage(items, hits.getNext());
+	}
+
 	/**
 	 * Update Owner
 	 */
@@ -84,6 +150,7 @@ class OwnerResource {
 
 		final Owner ownerModel = owner
 				.orElseThrow(() -> new ResourceNotFoundException("Owner " + ownerId + " not found"));
+		final OwnerSearchTerms previous = OwnerSearchIndex.copyOf(ownerModel);
 		// This is done by hand for simplicity purpose. In a real life use-case we should
 		// consider using MapStruct.
 		ownerModel.setFirstName(ownerRequest.getFirstName());
@@ -93,6 +160,32 @@ class OwnerResource {
 		ownerModel.setTelephone(ownerRequest.getTelephone());
 		log.info("Saving owner {}", ownerModel);
 		ownerRepository.save(ownerModel);
+		ownerSearchIndex.update(previous, ownerModel);
+	}
+
+	@Value
+	static class OwnerSearchPage {
+
+		List<Owner> items;
+
+		/**
+		 * Cursor of the next page, to pass as {@code after}, {@code null} on the last
+		 * page.
+		 */
+		String next;
+
+	}
+
+	@Value
+	static class OwnerPage {
+
+		List<Owner> items;
+
+		/**
+		 * Cursor of the next page, {@code null} on the last page.
+		 */
+		Integer next;
+
 	}
 
 }
@@ -0,0 +1,75 @@
+package org.springframework.samples.petclinic.customers.applicaton;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PrefixIndexTest {
+
+	private final PrefixIndex index = new PrefixIndex(3);
+
+	@Test
+	void shouldPageThroughEntriesStartingWithPrefix() {
+		index.completeRebuild(Arrays.asList(entry("davis", 4), entry("black", 7), entry("davis", 2),
+				entry("davidson", 9), entry("escobito", 1)));
+
+		List<PrefixIndex.Entry> first = index.search("dav", null, 2);
+		List<PrefixIndex.Entry> second = index.search("dav", first.get(1), 2);
+
+		assertThat(ids(first)).containsExactly(9, 2);
+		assertThat(ids(second)).containsExactly(4);
+	}
+
+	@Test
+	void shouldMergeWritesMadeSinceLastBuild() {
+		index.completeRebuild(Arrays.asList(entry("davis", 2), entry("davis", 4)));
+
+		index.add("davies", 12);
+		index.remove("davis", 2);
+		index.add("dawson", 13);
+
+		assertThat(ids(index.search("da", null, 10))).containsExactly(12, 4, 13);
+		assertThat(ids(index.search("davi", entry("davies", 12), 10))).containsExactly(4);
+	}
+
+	@Test
+	void shouldKeepSearchResultsWhenCompacting() {
+		index.completeRebuild(Arrays.asList(entry("davis", 2), entry("franklin", 1)));
+
+		for (int id = 20; id < 30; id++) {
+			index.add("davis", id);
+		}
+		index.remove("franklin", 1);
+
+		assertThat(index.size()).isEqualTo(11);
+		assertThat(index.search("davis", null, 20)).hasSize(11);
+		assertThat(index.search("f", null, 20)).isEmpty();
+	}
+
+	@Test
+	void shouldApplyWritesMadeDuringRebuildAgain() {
+		index.completeRebuild(Arrays.asList(entry("davis", 2)));
+
+		index.beginRebuild();
+		index.remove("davis", 2);
+		index.add("franklin", 2);
+		// loaded before the update was committed
+		index.completeRebuild(Arrays.asList(entry("davis", 2)));
+
+		assertThat(index.search("davis", null, 10)).isEmpty();
+		assertThat(ids(index.search("franklin", null, 10))).containsExactly(2);
+	}
+
+	private static PrefixIndex.Entry entry(String term, int id) {
+		return new PrefixIndex.Entry(term, id);
+	}
+
+	private static List<Integer> ids(List<PrefixIndex.Entry> entries) {
+		return entries.stream().map(entry -> entry.id).collect(Collectors.toList());
+	}
+
+}
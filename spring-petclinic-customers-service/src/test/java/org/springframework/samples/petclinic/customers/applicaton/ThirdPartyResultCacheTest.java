@@ -0,0 +1,54 @@
+package org.springframework.samples.petclinic.customers.applicaton;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.samples.petclinic.customers.system.CustomersProperties;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+class ThirdPartyResultCacheTest {
+
+	private final ThirdPartyServiceClient client = mock(ThirdPartyServiceClient.class);
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	private ThirdPartyResultCache cache;
+
+	@BeforeEach
+	void setUp() {
+		cache = new ThirdPartyResultCache(client, new CustomersProperties(), registry);
+	}
+
+	@AfterEach
+	void tearDown() {
+		cache.stop();
+	}
+
+	@Test
+	void shouldMissBeforeFirstRefresh() {
+		assertThat(cache.get()).isEmpty();
+		assertThat(registry.get("petclinic.thirdparty.cache.gets").tag("result", "miss").counter().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void shouldServeStaleValueWhenRefreshFails() {
+		given(client.getExternalService()).willReturn(Mono.just("foo"));
+		cache.refresh().block();
+
+		given(client.getExternalService()).willReturn(Mono.error(new IOException("Simulate error")));
+		cache.refresh().block();
+
+		assertThat(cache.get()).contains("foo");
+		assertThat(registry.get("petclinic.thirdparty.refresh").tag("outcome", "error").timer().count()).isEqualTo(1);
+	}
+
+}
@@ -0,0 +1,74 @@
+package org.springframework.samples.petclinic.customers.system;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+
+class DeadlineDataSourceTest {
+
+	private final Connection connection = mock(Connection.class);
+
+	private final PreparedStatement statement = mock(PreparedStatement.class);
+
+	private DeadlineDataSource dataSource;
+
+	@BeforeEach
+	void setUp() throws SQLException {
+		DataSource target = mock(DataSource.class);
+		given(target.getConnection()).willReturn(connection);
+		given(connection.prepareStatement("select 1")).willReturn(statement);
+		dataSource = new DeadlineDataSource(target);
+	}
+
+	@AfterEach
+	void tearDown() {
+		RequestDeadline.clear();
+	}
+
+	@Test
+	void shouldLeaveStatementsAloneWithoutDeadline() throws SQLException {
+		assertThat(dataSource.getConnection().prepareStatement("select 1")).isSameAs(statement);
+
+		then(statement).should(never()).setQueryTimeout(anyInt());
+	}
+
+	@Test
+	void shouldApplyRemainingBudgetAsQueryTimeout() throws SQLException {
+		RequestDeadline.set(RequestDeadline.fromHeaderValue("2500"));
+
+		dataSource.getConnection().prepareStatement("select 1");
+
+		then(statement).should().setQueryTimeout(3);
+	}
+
+	@Test
+	void shouldRefuseStatementsPastTheDeadline() throws SQLException {
+		RequestDeadline.set(RequestDeadline.fromHeaderValue("0"));
+		Connection withDeadline = dataSource.getConnection();
+
+		assertThatThrownBy(() -> withDeadline.prepareStatement("select 1")).isInstanceOf(SQLTimeoutException.class);
+		then(statement).should().close();
+	}
+
+	@Test
+	void shouldNotWrapTwice() {
+		assertThat(new DeadlineDataSourcePostProcessor().postProcessAfterInitialization(dataSource, "dataSource"))
+				.isSameAs(dataSource);
+	}
+
+}
@@ -0,0 +1,55 @@
+package org.springframework.samples.petclinic.customers.system;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DeadlineFilterTest {
+
+	private final DeadlineFilter filter = new DeadlineFilter();
+
+	@Test
+	void shouldRejectRequestsPastTheirDeadline() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/owners/1");
+		request.addHeader(RequestDeadline.HEADER, "0");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MockFilterChain chain = new MockFilterChain();
+
+		filter.doFilter(request, response, chain);
+
+		assertThat(response.getStatus()).isEqualTo(504);
+		assertThat(chain.getRequest()).isNull();
+	}
+
+	@Test
+	void shouldBindTheDeadlineWhileHandlingTheRequest() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/owners/1");
+		request.addHeader(RequestDeadline.HEADER, "2500");
+		AtomicReference<Optional<RequestDeadline>> bound = new AtomicReference<>();
+
+		filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> bound.set(RequestDeadline.current()));
+
+		assertThat(bound.get()).hasValueSatisfying(deadline -> assertThat(deadline.remainingSeconds()).isEqualTo(3));
+		assertThat(RequestDeadline.current()).isEmpty();
+	}
+
+	@Test
+	void shouldIgnoreMissingOrInvalidDeadlines() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/owners/1");
+		request.addHeader(RequestDeadline.HEADER, "soon");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		AtomicReference<Optional<RequestDeadline>> bound = new AtomicReference<>();
+
+		filter.doFilter(request, response, (req, res) -> bound.set(RequestDeadline.current()));
+
+		assertThat(response.getStatus()).isEqualTo(200);
+		assertThat(bound.get()).isEmpty();
+	}
+
+}
@@ -0,0 +1,114 @@
+package org.springframework.samples.petclinic.customers.web;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.samples.petclinic.customers.applicaton.OwnerSearchIndex;
+import org.springframework.samples.petclinic.customers.applicaton.ThirdPartyResultCache;
+import org.springframework.samples.petclinic.customers.model.Owner;
+import org.springframework.samples.petclinic.customers.model.OwnerRepository;
+import org.springframework.samples.petclinic.customers.model.Pet;
+import org.springframework.samples.petclinic.customers.system.BinaryFormatsConfig;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.Optional;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@ExtendWith(SpringExtension.class)
+@WebMvcTest(OwnerResource.class)
+@Import(BinaryFormatsConfig.class)
+@ActiveProfiles("test")
+class OwnerResourceTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@MockBean
+	OwnerRepository ownerRepository;
+
+	@MockBean
+	ThirdPartyResultCache thirdPartyResultCache;
+
+	@MockBean
+	OwnerSearchIndex ownerSearchIndex;
+
+	@Test
+	void shouldWriteDatesAsIsoStringsInSmile() throws Exception {
+		Owner owner = owner(1, "Franklin");
+		Pet pet = new Pet();
+		pet.setName("Leo");
+		pet.setBirthDate(Date.from(Instant.parse("2010-09-07T12:00:00Z")));
+		owner.addPet(pet);
+		given(ownerRepository.findById(1)).willReturn(Optional.of(owner));
+
+		byte[] body = mvc.perform(get("/owners/1").accept("application/x-jackson-smile")).andExpect(status().isOk())
+				.andReturn().getResponse().getContentAsByteArray();
+
+		JsonNode pets = new ObjectMapper(new SmileFactory()).readTree(body).path("pets");
+		assertThat(pets.path(0).path("birthDate").isTextual()).isTrue();
+		assertThat(pets.path(0).path("birthDate").asText()).startsWith("2010-09-07");
+	}
+
+	@Test
+	void shouldReturnNextCursorWhenPageIsFull() throws Exception {
+		given(ownerRepository.findByIdGreaterThanOrderByIdAsc(10, PageRequest.of(0, 2)))
+				.willReturn(asList(owner(11, "Franklin"), owner(12, "Davis")));
+
+		mvc.perform(get("/owners?after=10&size=2")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.items[0].lastName").value("Franklin"))
+				.andExpect(jsonPath("$.items[1].lastName").value("Davis")).andExpect(jsonPath("$.next").value(12));
+	}
+
+	@Test
+	void shouldNotReturnNextCursorOnLastPage() throws Exception {
+		given(ownerRepository.findByIdGreaterThanOrderByIdAsc(10, PageRequest.of(0, 2)))
+				.willReturn(asList(owner(11, "Franklin")));
+
+		mvc.perform(get("/owners?after=10&size=2")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.items.length()").value(1)).andExpect(jsonPath("$.next").doesNotExist());
+	}
+
+	@Test
+	void shouldSearchOwnersInIndexOrder() throws Exception {
+		given(ownerSearchIndex.search(OwnerSearchIndex.Field.LAST_NAME, "Dav", null, 2))
+				.willReturn(new OwnerSearchIndex.Hits(asList(12, 4), "next-cursor"));
+		given(ownerRepository.findWithPetsByIdIn(asList(12, 4)))
+				.willReturn(asList(owner(4, "Davis"), owner(12, "Davidson")));
+
+		mvc.perform(get("/owners/search?lastName=Dav&size=2")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.items[0].lastName").value("Davidson"))
+				.andExpect(jsonPath("$.items[1].lastName").value("Davis"))
+				.andExpect(jsonPath("$.next").value("next-cursor"));
+	}
+
+	@Test
+	void shouldRejectSearchOnSeveralFields() throws Exception {
+		mvc.perform(get("/owners/search?lastName=Dav&city=Madison")).andExpect(status().isBadRequest());
+	}
+
+	private Owner owner(int id, String lastName) {
+		Owner owner = new Owner();
+		ReflectionTestUtils.setField(owner, "id", id);
+		owner.setLastName(lastName);
+		return owner;
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.vets.system;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+/**
+ * Smile and CBOR converters whose mappers get the same Boot customizations as the JSON
+ * one, so that binary responses are written with the same settings (dates as ISO
+ * strings rather than timestamps in particular). They replace the converters Spring MVC
+ * would otherwise create from a plain builder.
+ */
+@Configuration
+public class BinaryFormatsConfig {
+
+	private final ApplicationContext applicationContext;
+
+	private final ObjectProvider<Jackson2ObjectMapperBuilderCustomizer> customizers;
+
+	public BinaryFormatsConfig(ApplicationContext applicationContext,
+			ObjectProvider<Jackson2ObjectMapperBuilderCustomizer> customizers) {
+		this.applicationContext = applicationContext;
+		this.customizers = customizers;
+	}
+
+	@Bean
+	MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter() {
+		return new MappingJackson2SmileHttpMessageConverter(objectMapper(new SmileFactory()));
+	}
+
+	@Bean
+	MappingJackson2CborHttpMessageConverter cborHttpMessageConverter() {
+		return new MappingJackson2CborHttpMessageConverter(objectMapper(new CBORFactory()));
+	}
+
+	private ObjectMapper objectMapper(JsonFactory factory) {
+		Jackson2ObjectMapperBuilder builder = new Jackson2ObjectMapperBuilder();
+		builder.applicationContext(applicationContext);
+		customizers.orderedStream().forEach(customizer -> customizer.customize(builder));
+		return builder.factory(factory).build();
+	}
+
+}
@@ -15,6 +15,8 @@
  */
 package org.springframework.samples.petclinic.vets.system;
 
+import java.time.Duration;
+
 import lombok.Data;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -30,6 +32,8 @@ public class VetsProperties {
 
 	private Cache cache;
 
+	private final Warmup warmup = new Warmup();
+
 	@Data
 	public static class Cache {
 
@@ -39,4 +43,27 @@ public class VetsProperties {
 
 	}
 
+	@Data
+	public static class Warmup {
+
+		/**
+		 * Whether synthetic requests are sent through the hot paths before the instance
+		 * takes traffic.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * Upper bound of the warmup, after which the instance reports UP anyway.
+		 */
+		private Duration budget = Duration.ofSeconds(30);
+
+		private int requests = 5000;
+
+		/**
+		 * Requests sent in parallel.
+		 */
+		private int concurrency = 4;
+
+	}
+
 }
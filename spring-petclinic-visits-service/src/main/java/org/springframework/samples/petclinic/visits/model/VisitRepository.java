@@ -16,9 +16,13 @@
 package org.springframework.samples.petclinic.visits.model;
 
 import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Repository class for <code>Visit</code> domain objects All method names are compliant
@@ -38,4 +42,23 @@ public interface VisitRepository extends JpaRepository<Visit, Integer> {
 
 	List<Visit> findByPetIdIn(Collection<Integer> petIds);
 
+	/**
+	 * Most recent dated visits of a pet, newest first, ties broken by id.
+	 */
+	@Query("SELECT v FROM Visit v WHERE v.petId = :petId AND v.date IS NOT NULL ORDER BY v.date DESC, v.id DESC")
+	List<Visit> findTimelineByPetId(@Param("petId") int petId, Pageable page);
+
+	/**
+	 * Next dated visits of a pet after the visit of the given date and id in
+	 * {@link #findTimelineByPetId} order.
+	 */
+	@Query("SELECT v FROM Visit v WHERE v.petId = :petId AND (v.date < :date OR (v.date = :date AND v.id < :id)) "
+			+ "ORDER BY v.date DESC, v.id DESC")
+	List<Visit> findTimelineByPetIdBefore(@Param("petId") int petId, @Param("date") Date date, @Param("id") int id,
+			Pageable page);
+
+	@Query("SELECT new org.springframework.samples.petclinic.visits.model.VisitSummary(v.petId, COUNT(v), MAX(v.date)) "
+			+ "FROM Visit v WHERE v.petId IN :petIds GROUP BY v.petId")
+	List<VisitSummary> summarizeByPetIdIn(@Param("petIds") Collection<Integer> petIds);
+
 }
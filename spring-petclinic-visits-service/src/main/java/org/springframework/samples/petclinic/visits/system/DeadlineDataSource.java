@@ -0,0 +1,80 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.system;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Optional;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Applies the remaining budget of the current {@link RequestDeadline} as the query timeout
+ * of every JDBC statement, so that the database stops working on requests nobody waits
+ * for anymore. Statements are refused outright once the deadline has passed.
+ */
+public class DeadlineDataSource extends DelegatingDataSource {
+
+	public DeadlineDataSource(DataSource targetDataSource) {
+		super(targetDataSource);
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return withDeadline(super.getConnection());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return withDeadline(super.getConnection(username, password));
+	}
+
+	private Connection withDeadline(Connection connection) {
+		return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+				(proxy, method, args) -> {
+					Object result;
+					try {
+						result = method.invoke(connection, args);
+					}
+					catch (InvocationTargetException ex) {
+						throw ex.getTargetException();
+					}
+					if (result instanceof Statement) {
+						applyDeadline((Statement) result);
+					}
+					return result;
+				});
+	}
+
+	private void applyDeadline(Statement statement) throws SQLException {
+		Optional<RequestDeadline> deadline = RequestDeadline.current();
+		if (!deadline.isPresent()) {
+			return;
+		}
+		if (deadline.get().isExpired()) {
+			statement.close();
+			throw new SQLTimeoutException("Deadline exceeded before the statement was executed");
+		}
+		statement.setQueryTimeout(deadline.get().remainingSeconds());
+	}
+
+}
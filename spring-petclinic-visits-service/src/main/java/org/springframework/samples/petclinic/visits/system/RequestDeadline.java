@@ -0,0 +1,78 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.system;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Point in time after which the caller no longer waits for the request being handled,
+ * received from the gateway as the remaining budget in milliseconds in the
+ * {@value #HEADER} header. It is bound to the request thread by {@link DeadlineFilter}.
+ */
+public final class RequestDeadline {
+
+	public static final String HEADER = "X-Request-Timeout";
+
+	private static final ThreadLocal<RequestDeadline> CURRENT = new ThreadLocal<>();
+
+	private final long nanos;
+
+	private RequestDeadline(long nanos) {
+		this.nanos = nanos;
+	}
+
+	public static Optional<RequestDeadline> current() {
+		return Optional.ofNullable(CURRENT.get());
+	}
+
+	static void set(RequestDeadline deadline) {
+		CURRENT.set(deadline);
+	}
+
+	static void clear() {
+		CURRENT.remove();
+	}
+
+	static RequestDeadline fromHeaderValue(String value) {
+		try {
+			if (value == null) {
+				return null;
+			}
+			return new RequestDeadline(System.nanoTime() + Duration.ofMillis(Long.parseLong(value.trim())).toNanos());
+		}
+		catch (NumberFormatException ex) {
+			return null;
+		}
+	}
+
+	public Duration remaining() {
+		return Duration.ofNanos(nanos - System.nanoTime());
+	}
+
+	public boolean isExpired() {
+		return nanos - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Remaining budget rounded up to whole seconds, as JDBC query timeouts are, and never
+	 * 0 which would mean no timeout at all.
+	 */
+	public int remainingSeconds() {
+		return (int) Math.max(1, (remaining().toMillis() + 999) / 1000);
+	}
+
+}
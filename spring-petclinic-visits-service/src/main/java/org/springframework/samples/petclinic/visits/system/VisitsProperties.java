@@ -0,0 +1,57 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.system;
+
+import java.time.Duration;
+
+import lombok.Data;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Typesafe custom configuration.
+ */
+@Data
+@ConfigurationProperties(prefix = "visits")
+public class VisitsProperties {
+
+	private final Warmup warmup = new Warmup();
+
+	@Data
+	public static class Warmup {
+
+		/**
+		 * Whether synthetic requests are sent through the hot paths before the instance
+		 * takes traffic.
+		 */
+		private boolean enabled = true;
+
+		/**
+		 * Upper bound of the warmup, after which the instance reports UP anyway.
+		 */
+		private Duration budget = Duration.ofSeconds(30);
+
+		private int requests = 5000;
+
+		/**
+		 * Requests sent in parallel, which is also the number of database connections
+		 * warmed up.
+		 */
+		private int concurrency = 4;
+
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2002-2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.samples.petclinic.visits.system;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Sends synthetic requests through the hot paths of the service, down to the database
+ * and the JSON and Smile serialization of the entities, so that they are compiled and
+ * the connection pools filled before real traffic comes in. It runs while the
+ * {@link ApplicationReadyEvent} is handled, hence before readiness turns to accepting
+ * traffic, and only then marks the instance UP in Eureka, where it registers as
+ * STARTING (see {@code eureka.instance.initial-status}).
+ */
+@Component
+@Slf4j
+public class WarmupRunner {
+
+	/**
+	 * Only reads, {@code %d} being replaced by pet ids of the sample data.
+	 */
+	private static final List<String> PATHS = Arrays.asList("/pets/visits?petId=1,2,3,4,5,6,7,8,9,10",
+			"/pets/visits/summary?petId=1,2,3,4,5,6,7,8,9,10", "/owners/1/pets/%d/visits",
+			"/owners/1/pets/%d/visits?limit=20");
+
+	private static final int SAMPLE_IDS = 10;
+
+	private final VisitsProperties.Warmup properties;
+
+	private final ObjectProvider<ApplicationInfoManager> applicationInfoManager;
+
+	public WarmupRunner(VisitsProperties properties, ObjectProvider<ApplicationInfoManager> applicationInfoManager) {
+		this.properties = properties.getWarmup();
+		this.applicationInfoManager = applicationInfoManager;
+	}
+
+	@EventListener
+	public void warmUp(ApplicationReadyEvent event) throws InterruptedException {
+		if (properties.isEnabled() && event.getApplicationContext() instanceof WebServerApplicationContext) {
+			int port = ((WebServerApplicationContext) event.getApplicationContext()).getWebServer().getPort();
+			run("http://localhost:" + port);
+		}
+		applicationInfoManager.ifAvailable(manager -> manager.setInstanceStatus(InstanceInfo.InstanceStatus.UP));
+	}
+
+	private void run(String baseUrl) throws InterruptedException {
+		SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+		requestFactory.setConnectTimeout((int) properties.getBudget().toMillis());
+		requestFactory.setReadTimeout((int) properties.getBudget().toMillis());
+		RestTemplate restTemplate = new RestTemplate(requestFactory);
+		long start = System.nanoTime();
+		long deadline = start + properties.getBudget().toNanos();
+		AtomicInteger sent = new AtomicInteger();
+		AtomicInteger failed = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(properties.getConcurrency());
+		for (int thread = 0; thread < properties.getConcurrency(); thread++) {
+			executor.execute(() -> {
+				for (int i = sent.getAndIncrement(); i < properties.getRequests()
+						&& System.nanoTime() < deadline; i = sent.getAndIncrement()) {
+					try {
+						restTemplate.exchange(baseUrl + path(i), HttpMethod.GET, new HttpEntity<>(headers(i)),
+								byte[].class);
+					}
+					catch (RestClientException ex) {
+						failed.incrementAndGet();
+					}
+				}
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(properties.getBudget().toNanos(), TimeUnit.NANOSECONDS);
+		executor.shutdownNow();
+		log.info("Warmed up with {} requests ({} failed) in {} ms", Math.min(sent.get(), properties.getRequests()),
+				failed.get(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+	}
+
+	private static String path(int i) {
+		int id = i / PATHS.size() % SAMPLE_IDS + 1;
+		return String.format(PATHS.get(i % PATHS.size()), id, id);
+	}
+
+	/**
+	 * Alternates between the formats asked by the gateway and by other clients.
+	 */
+	private static HttpHeaders headers(int i) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.ACCEPT, i % 2 == 0 ? "application/x-jackson-smile" : MediaType.APPLICATION_JSON_VALUE);
+		headers.set(HttpHeaders.ACCEPT_ENCODING, "gzip");
+		return headers;
+	}
+
+}
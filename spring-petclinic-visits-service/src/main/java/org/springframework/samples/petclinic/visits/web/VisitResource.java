@@ -15,6 +15,7 @@
  */
 package org.springframework.samples.petclinic.visits.web;
 
+import java.util.Date;
 import java.util.List;
 import javax.validation.Valid;
 
@@ -22,9 +23,13 @@ import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.format.annotation.DateTimeFormat.ISO;
 import org.springframework.http.HttpStatus;
 import org.springframework.samples.petclinic.visits.model.Visit;
 import org.springframework.samples.petclinic.visits.model.VisitRepository;
+import org.springframework.samples.petclinic.visits.model.VisitSummary;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -46,6 +51,8 @@ import org.springframework.web.bind.annotation.RestController;
 @Timed("petclinic.visit")
 class VisitResource {
 
+	static final int MAX_TIMELINE_SIZE = 100;
+
 	private final VisitRepository visitRepository;
 
 	@PostMapping("owners/*/pets/{petId}/visits")
@@ -62,12 +69,30 @@ class VisitResource {
 		return visitRepository.findByPetId(petId);
 	}
 
+	/**
+	 * Visits of a pet newest first, a page at a time: the next page is the one before the
+	 * date and id of the last visit received. Undated visits are left out.
+	 */
+	@GetMapping(value = "owners/*/pets/{petId}/visits", params = "limit")
+	public List<Visit> visitsTimeline(@PathVariable("petId") int petId, @RequestParam("limit") int limit,
+			@RequestParam(value = "before", required = false) @DateTimeFormat(iso = ISO.DATE) Date before,
+			@RequestParam(value = "beforeId", defaultValue = "" + Integer.MAX_VALUE) int beforeId) {
+		final PageRequest page = PageRequest.of(0, Math.max(1, Math.min(limit, MAX_TIMELINE_SIZE)));
+		return before == null ? visitRepository.findTimelineByPetId(petId, page)
+				: visitRepository.findTimelineByPetIdBefore(petId, before, beforeId, page);
+	}
+
 	@GetMapping("pets/visits")
 	public Visits visitsMultiGet(@RequestParam("petId") List<Integer> petIds) {
 		final List<Visit> byPetIdIn = visitRepository.findByPetIdIn(petIds);
 		return new Visits(byPetIdIn);
 	}
 
+	@GetMapping("pets/visits/summary")
+	public VisitSummaries visitsSummaryMultiGet(@RequestParam("petId") List<Integer> petIds) {
+		return new VisitSummaries(visitRepository.summarizeByPetIdIn(petIds));
+	}
+
 	@Value
 	static class Visits {
 
@@ -75,4 +100,11 @@ class VisitResource {
 
 	}
 
+	@Value
+	static class VisitSummaries {
+
+		List<VisitSummary> items;
+
+	}
+
 }
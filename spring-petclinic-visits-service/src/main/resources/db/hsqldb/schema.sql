@@ -7,4 +7,4 @@ CREATE TABLE visits (
   description VARCHAR(8192)
 );
 
-CREATE INDEX visits_pet_id ON visits (pet_id);
+CREATE INDEX visits_pet_id_date ON visits (pet_id, visit_date);
@@ -1,19 +1,32 @@
 package org.springframework.samples.petclinic.visits.web;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.samples.petclinic.visits.model.VisitRepository;
+import org.springframework.samples.petclinic.visits.model.VisitSummary;
+import org.springframework.samples.petclinic.visits.system.RequestDeadline;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.Date;
+
 import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.then;
+import static org.mockito.Mockito.never;
 import static org.springframework.samples.petclinic.visits.model.Visit.visit;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -39,4 +52,43 @@ class VisitResourceTest {
 				.andExpect(jsonPath("$.items[1].petId").value(222)).andExpect(jsonPath("$.items[2].petId").value(222));
 	}
 
+	@Test
+	void shouldFetchVisitsAsSmile() throws Exception {
+		given(visitRepository.findByPetIdIn(asList(111))).willReturn(asList(visit().id(1).petId(111).build()));
+
+		byte[] body = mvc.perform(get("/pets/visits?petId=111").accept("application/x-jackson-smile"))
+				.andExpect(status().isOk()).andExpect(content().contentType("application/x-jackson-smile"))
+				.andReturn().getResponse().getContentAsByteArray();
+
+		JsonNode visits = new ObjectMapper(new SmileFactory()).readTree(body);
+		assertThat(visits.path("items").path(0).path("petId").asInt()).isEqualTo(111);
+	}
+
+	@Test
+	void shouldFetchVisitSummaries() throws Exception {
+		given(visitRepository.summarizeByPetIdIn(asList(111, 222)))
+				.willReturn(asList(new VisitSummary(111, 1, new Date()), new VisitSummary(222, 2, new Date())));
+
+		mvc.perform(get("/pets/visits/summary?petId=111,222")).andExpect(status().isOk())
+				.andExpect(jsonPath("$.items[0].petId").value(111)).andExpect(jsonPath("$.items[0].count").value(1))
+				.andExpect(jsonPath("$.items[1].petId").value(222)).andExpect(jsonPath("$.items[1].count").value(2));
+	}
+
+	@Test
+	void shouldFetchVisitTimelineNewestFirst() throws Exception {
+		given(visitRepository.findTimelineByPetId(111, PageRequest.of(0, VisitResource.MAX_TIMELINE_SIZE)))
+				.willReturn(asList(visit().id(3).petId(111).build(), visit().id(1).petId(111).build()));
+
+		mvc.perform(get("/owners/1/pets/111/visits?limit=500")).andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].id").value(3)).andExpect(jsonPath("$[1].id").value(1));
+	}
+
+	@Test
+	void shouldRejectRequestsPastTheirDeadline() throws Exception {
+		mvc.perform(get("/pets/visits?petId=111").header(RequestDeadline.HEADER, "0"))
+				.andExpect(status().isGatewayTimeout());
+
+		then(visitRepository).should(never()).findByPetIdIn(any());
+	}
+
 }